@@ -0,0 +1,69 @@
+package benchmarks;
+
+import main.Board;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class BoardBenchmark {
+    @Param({"opening", "middlegame", "endgame"})
+    private String position;
+
+    private Board board;
+    private int[] moves;
+    private int moveCount;
+
+    @Setup
+    public void setUp(){
+        board = Positions.create(position);
+        moves = new int[Board.MAX_MOVES];
+        moveCount = board.generateMoves(moves);
+    }
+
+    @Benchmark
+    public int generateMoves(){
+        return board.generateMoves(moves);
+    }
+
+    // the Move objects handed to the GUI, to keep an eye on what the boundary costs
+    @Benchmark
+    public Object getLegalMoves(){
+        return board.getLegalMoves();
+    }
+
+    // every move of the position played and undone once
+    @Benchmark
+    public void playAndUndoMoves(Blackhole blackhole){
+        for (int i = 0; i < moveCount; i++){
+            board.playMove(moves[i]);
+            blackhole.consume(board.getZobristKey());
+            board.undoLastMove();
+        }
+    }
+
+    // move generation and make/unmake together, as the search uses them
+    @Benchmark
+    public long perft(){
+        return board.perft(3);
+    }
+
+    @Benchmark
+    public int evaluatePosition(){
+        return board.evaluatePosition();
+    }
+}
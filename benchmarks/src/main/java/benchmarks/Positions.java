@@ -0,0 +1,19 @@
+package benchmarks;
+
+import main.Board;
+
+public class Positions {
+    // representative positions for the benchmarks
+    public static final String OPENING = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    public static final String MIDDLEGAME = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+    public static final String ENDGAME = "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1";
+
+    public static Board create(String name){
+        return switch (name){
+            case "opening" -> Board.fromFen(OPENING);
+            case "middlegame" -> Board.fromFen(MIDDLEGAME);
+            case "endgame" -> Board.fromFen(ENDGAME);
+            default -> throw new IllegalArgumentException("Unknown position: " + name);
+        };
+    }
+}
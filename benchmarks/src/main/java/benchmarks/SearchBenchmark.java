@@ -0,0 +1,48 @@
+package benchmarks;
+
+import main.Board;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class SearchBenchmark {
+    @Param({"opening", "middlegame", "endgame"})
+    private String position;
+
+    @Param({"4"})
+    private int depth;
+
+    private Board board;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        board = Positions.create(position);
+        board.setHashSize(1);
+    }
+
+    // every search starts from an empty transposition table, otherwise later invocations are just table lookups
+    @Setup(Level.Invocation)
+    public void clearTranspositionTable(){
+        board.getTranspositionTable().clear();
+    }
+
+    @Benchmark
+    public Object findBestMove(){
+        return board.findBestMove(depth);
+    }
+}
@@ -0,0 +1,196 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// results of deep searches that outlive the process: best move, score and depth by zobrist key, in a memory mapped
+// file, so a restarted engine answers positions it has analysed before without searching them again.
+// the file is a header followed by buckets of ENTRIES_PER_BUCKET entries, a position can only be stored in the
+// bucket its key maps to. each time the file is opened a new generation starts. a full bucket gives up its entry
+// from the oldest generation first (the shallowest among equally old ones), and an entry that is looked up moves
+// to the current generation, so positions that keep being studied stay while forgotten ones make room
+public class AnalysisCache implements AutoCloseable {
+    // entry data, packed into a long like the transposition table's:
+    // bits 0-31  -> score in centipawns, from white's point of view like SearchResult
+    // bits 32-39 -> depth searched
+    // bits 40-55 -> best move (lower 16 bits of the packed move: starting square, target square and flags)
+    public static final long NOT_FOUND = 0L;
+
+    public static final int DEFAULT_SIZE_MB = 64;
+    // searches that complete fewer iterations aren't worth keeping, they take no time to repeat
+    public static final int DEFAULT_MINIMUM_DEPTH = 10;
+
+    // header: magic, version, bucket count, generation, then unused up to HEADER_SIZE
+    private static final int MAGIC = 0x48434e41;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int GENERATION_OFFSET = 12;
+
+    // entry: key (8 bytes), score (4), move (2), depth (1), generation (1). four to a 64 byte bucket, one cache line
+    private static final int ENTRY_SIZE = 16;
+    private static final int ENTRIES_PER_BUCKET = 4;
+    private static final int BUCKET_SIZE = ENTRY_SIZE * ENTRIES_PER_BUCKET;
+
+    private final MappedByteBuffer buffer;
+    private final int bucketMask;
+    private final int generation;
+    private volatile int minimumDepth = DEFAULT_MINIMUM_DEPTH;
+
+    private AnalysisCache(MappedByteBuffer buffer, int bucketCount, int generation){
+        this.buffer = buffer;
+        this.bucketMask = bucketCount - 1;
+        this.generation = generation;
+    }
+
+    // opens the cache in the file, or creates it with sizeInMb if the file doesn't exist yet. an existing file
+    // keeps the size it was created with
+    public static AnalysisCache open(Path file, int sizeInMb) throws IOException {
+        if (sizeInMb < 1){
+            throw new IllegalArgumentException("Analysis cache size must be at least 1 MB, got " + sizeInMb);
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            boolean created = channel.size() == 0;
+            int bucketCount;
+            if (created){
+                // round down to a power of two so the bucket is just a mask of the key
+                bucketCount = (int) Math.min(Long.highestOneBit((long) sizeInMb * 1024 * 1024 / BUCKET_SIZE), 1 << 24);
+            } else {
+                bucketCount = readBucketCount(file, channel);
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) bucketCount * BUCKET_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (created){
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, bucketCount);
+            }
+
+            int generation = (buffer.getInt(GENERATION_OFFSET) + 1) & 0xff;
+            buffer.putInt(GENERATION_OFFSET, generation);
+            return new AnalysisCache(buffer, bucketCount, generation);
+        }
+    }
+
+    private static int readBucketCount(Path file, FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_SIZE){
+            throw new IOException(file + " is not an analysis cache");
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        int bucketCount = header.getInt(8);
+        // never overwrite a file that isn't one of ours
+        if (header.getInt(0) != MAGIC || Integer.bitCount(bucketCount) != 1 || channel.size() != HEADER_SIZE + (long) bucketCount * BUCKET_SIZE){
+            throw new IOException(file + " is not an analysis cache");
+        }
+        if (header.getInt(4) != VERSION){
+            throw new IOException(file + " is an analysis cache of version " + header.getInt(4) + ", expected " + VERSION);
+        }
+        return bucketCount;
+    }
+
+    public int getSizeInMb(){
+        return (int) ((long) (bucketMask + 1) * BUCKET_SIZE / (1024 * 1024));
+    }
+
+    public int getMinimumDepth(){
+        return minimumDepth;
+    }
+
+    // searches shallower than this aren't stored
+    public void setMinimumDepth(int minimumDepth){
+        if (minimumDepth < 1){
+            throw new IllegalArgumentException("Minimum depth must be at least 1, got " + minimumDepth);
+        }
+        this.minimumDepth = minimumDepth;
+    }
+
+    // boards searching on different threads can share the cache, lookups are rare (one per search) so a lock is fine
+    public synchronized long probe(long key){
+        int bucket = getBucketOffset(key);
+        for (int i = 0; i < ENTRIES_PER_BUCKET; i++){
+            int entry = bucket + i * ENTRY_SIZE;
+            if (buffer.getLong(entry) == key && getStoredDepth(entry) > 0){
+                buffer.put(entry + 15, (byte) generation);
+                return (buffer.getInt(entry + 8) & 0xffffffffL)
+                        | ((long) getStoredDepth(entry) << 32)
+                        | ((long) (buffer.getShort(entry + 12) & 0xffff) << 40);
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    public synchronized void store(long key, int move, int score, int depth){
+        if (depth < 1){
+            throw new IllegalArgumentException("Depth must be at least 1, got " + depth);
+        }
+        int bucket = getBucketOffset(key);
+
+        int replaced = -1;
+        int replacedPriority = Integer.MIN_VALUE;
+        for (int i = 0; i < ENTRIES_PER_BUCKET; i++){
+            int entry = bucket + i * ENTRY_SIZE;
+            // a result for the same position is only replaced by one at least as deep, however old it is
+            if (getStoredDepth(entry) > 0 && buffer.getLong(entry) == key){
+                if (depth < getStoredDepth(entry)){
+                    buffer.put(entry + 15, (byte) generation);
+                    return;
+                }
+                replaced = entry;
+                break;
+            }
+            // empty entries first, then the oldest, then the shallowest
+            int priority = getStoredDepth(entry) == 0 ? Integer.MAX_VALUE : (getAge(entry) << 8) - getStoredDepth(entry);
+            if (priority > replacedPriority){
+                replaced = entry;
+                replacedPriority = priority;
+            }
+        }
+
+        buffer.putLong(replaced, key);
+        buffer.putInt(replaced + 8, score);
+        buffer.putShort(replaced + 12, (short) move);
+        buffer.put(replaced + 14, (byte) Math.min(depth, 0xff));
+        buffer.put(replaced + 15, (byte) generation);
+    }
+
+    // writes the changes back to the file now rather than whenever the operating system gets to it
+    public synchronized void flush(){
+        buffer.force();
+    }
+
+    @Override
+    public void close(){
+        flush();
+    }
+
+    private int getBucketOffset(long key){
+        return HEADER_SIZE + ((int) key & bucketMask) * BUCKET_SIZE;
+    }
+
+    private int getStoredDepth(int entry){
+        return buffer.get(entry + 14) & 0xff;
+    }
+
+    // how many sessions ago the entry was last stored or looked up
+    private int getAge(int entry){
+        return (generation - (buffer.get(entry + 15) & 0xff)) & 0xff;
+    }
+
+    public static int getScore(long entryData){
+        return (int) entryData;
+    }
+
+    public static int getDepth(long entryData){
+        return (int) (entryData >>> 32) & 0xff;
+    }
+
+    public static int getMove(long entryData){
+        return (int) (entryData >>> 40) & 0xffff;
+    }
+}
@@ -0,0 +1,200 @@
+package main;
+
+public class AttackTables {
+    // precomputed attack bitboards for the pieces whose attacks don't depend on other pieces,
+    // so move generation is just a lookup and a mask instead of looping over directions
+    public static final long[] KNIGHT_ATTACKS = new long[64];
+    public static final long[] KING_ATTACKS = new long[64];
+
+    // squares a pawn attacks, indexed by colour ordinal then square
+    public static final long[][] PAWN_ATTACKS = new long[2][64];
+
+    public static final long RANK_1 = 0x00000000000000ffL;
+    public static final long RANK_3 = 0x0000000000ff0000L;
+    public static final long RANK_6 = 0x0000ff0000000000L;
+    public static final long RANK_8 = 0xff00000000000000L;
+
+    // squares strictly between two squares on the same rank, file or diagonal, and the whole line through them
+    // (both squares included), 0 when they aren't on a line. used for check evasions and pinned pieces
+    public static final long[][] BETWEEN = new long[64][64];
+    public static final long[][] LINE = new long[64][64];
+
+    // magic bitboards for the sliding pieces: the relevant blockers of a square are multiplied by a magic number
+    // so that their top bits form a perfect index into that square's attack table.
+    // the magics were found once by random search (sparse random numbers with no destructive collisions),
+    // so class load only has to fill the tables
+    private static final long[] ROOK_MASKS = new long[64];
+    private static final long[] ROOK_MAGICS = {
+            0x1080004008801020L, 0x0840092002c03000L, 0x1900200010400900L, 0x0880100008000480L,
+            0x4200100420080200L, 0x8100020100080400L, 0x0200040110886200L, 0x0200008040220411L,
+            0x0404800084400220L, 0x0000401000402000L, 0x0086001081220440L, 0x0408800800100280L,
+            0x000a001201040820L, 0x8848800200840080L, 0x4001000100040200L, 0x0442000102105084L,
+            0x9080010020804100L, 0x0040404000201009L, 0x0000808010002009L, 0x2200090021d00100L,
+            0x0008008008040080L, 0x0004004002010040L, 0x0011040008015042L, 0x00000a0001768104L,
+            0x0000800080204009L, 0x2010004140002001L, 0x9800200280100080L, 0x1000100080080080L,
+            0x0050500500080100L, 0x0000020080040080L, 0x0c10010400420810L, 0x1040008200005104L,
+            0x01808240088004a0L, 0x0882804004802000L, 0x0880402001001100L, 0x2000210409001000L,
+            0x2000480131001500L, 0x0000800400800200L, 0x000002380c001003L, 0x4600084882000431L,
+            0x0080002000504000L, 0x0300500020004002L, 0x0040408200220011L, 0x0010040008004040L,
+            0x0000080004008080L, 0x0010040002008080L, 0x2012004881020004L, 0x8300842444820011L,
+            0x0088403882010200L, 0x0820400080210100L, 0x0110910040a00300L, 0x0801100280080480L,
+            0x0242009008200600L, 0x1002000489500200L, 0x0040800200010080L, 0x0091800041000080L,
+            0x0000209300488001L, 0x04c1002414824001L, 0x020020000b001041L, 0x7000100004200901L,
+            0x8002002004100802L, 0x30010002084c0007L, 0x0888221800813004L, 0x4000002840840112L
+    };
+    private static final int[] ROOK_SHIFTS = new int[64];
+    private static final long[][] ROOK_ATTACKS = new long[64][];
+
+    private static final long[] BISHOP_MASKS = new long[64];
+    private static final long[] BISHOP_MAGICS = {
+            0x20c0090901061081L, 0x0024040094030104L, 0x8210810200290200L, 0x0011040484620000L,
+            0x0081104002221000L, 0x0009012011001350L, 0x0081010802400380L, 0x0000420210010408L,
+            0x0008105002280050L, 0x0001028484040044L, 0x2a00880810408804L, 0x7020022282000100L,
+            0x0084040420100a50L, 0x000401010840e000L, 0x2020020210420888L, 0x0008084202012010L,
+            0x2010400810018800L, 0x0445122008020840L, 0x0804100808002008L, 0x0008002104110100L,
+            0x0061005820080800L, 0x2001000200820100L, 0x480c210084010800L, 0x3004442500480420L,
+            0x1010102240048100L, 0x00182009084220a3L, 0x8803090a10004205L, 0x0208080040202020L,
+            0x000c044084010040L, 0x00a1010002004106L, 0x6008210020640202L, 0x1600902112860801L,
+            0x00042008c1220200L, 0x010c042002440140L, 0x5022080200040820L, 0x0402004042940100L,
+            0x0860108400008020L, 0x000c080022021000L, 0x0264080652822100L, 0x4005031221010401L,
+            0x0004502410008400L, 0x000500b010a20400L, 0x0415094050080800L, 0x080000201800a104L,
+            0x4022a80304000110L, 0x4012140802028020L, 0x40200104010100a0L, 0x12810806008b0c41L,
+            0x0020441008080000L, 0x2002120084045420L, 0x0704020062080002L, 0x0000001084040001L,
+            0x0322200891240200L, 0xf040200210024800L, 0x0140824832008042L, 0x000210020a004602L,
+            0x0083042805141020L, 0x002c12009a011000L, 0x0041a00044140400L, 0x00004004020a0202L,
+            0x0000140010020210L, 0x2864160811012200L, 0x2060080841082a17L, 0xa010041108003100L
+    };
+    private static final int[] BISHOP_SHIFTS = new int[64];
+    private static final long[][] BISHOP_ATTACKS = new long[64][];
+
+    private static final int[][] ROOK_DIRECTIONS = {{0, 1}, {1, 0}, {0, -1}, {-1, 0}};
+    private static final int[][] BISHOP_DIRECTIONS = {{1, 1}, {1, -1}, {-1, -1}, {-1, 1}};
+
+    private static final int[][] KNIGHT_OFFSETS = {{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2}};
+    private static final int[][] KING_OFFSETS = {{0, 1}, {1, 1}, {1, 0}, {1, -1}, {0, -1}, {-1, -1}, {-1, 0}, {-1, 1}};
+
+    static {
+        for (int square = 0; square < 64; square++){
+            KNIGHT_ATTACKS[square] = getOffsetAttacks(square, KNIGHT_OFFSETS);
+            KING_ATTACKS[square] = getOffsetAttacks(square, KING_OFFSETS);
+
+            PAWN_ATTACKS[Colour.White.ordinal()][square] = getOffsetAttacks(square, new int[][]{{-1, 1}, {1, 1}});
+            PAWN_ATTACKS[Colour.Black.ordinal()][square] = getOffsetAttacks(square, new int[][]{{-1, -1}, {1, -1}});
+
+            initialiseMagic(square, ROOK_DIRECTIONS, ROOK_MASKS, ROOK_MAGICS[square], ROOK_SHIFTS, ROOK_ATTACKS);
+            initialiseMagic(square, BISHOP_DIRECTIONS, BISHOP_MASKS, BISHOP_MAGICS[square], BISHOP_SHIFTS, BISHOP_ATTACKS);
+        }
+
+        for (int from = 0; from < 64; from++){
+            for (int to = 0; to < 64; to++){
+                if (from == to){
+                    continue;
+                }
+                long fromMask = 1L << from;
+                long toMask = 1L << to;
+                if ((getRookAttacks(from, 0L) & toMask) != 0){
+                    BETWEEN[from][to] = getRookAttacks(from, toMask) & getRookAttacks(to, fromMask);
+                    LINE[from][to] = (getRookAttacks(from, 0L) & getRookAttacks(to, 0L)) | fromMask | toMask;
+                } else if ((getBishopAttacks(from, 0L) & toMask) != 0){
+                    BETWEEN[from][to] = getBishopAttacks(from, toMask) & getBishopAttacks(to, fromMask);
+                    LINE[from][to] = (getBishopAttacks(from, 0L) & getBishopAttacks(to, 0L)) | fromMask | toMask;
+                }
+            }
+        }
+    }
+
+    public static long getRookAttacks(int square, long occupied){
+        int index = (int) (((occupied & ROOK_MASKS[square]) * ROOK_MAGICS[square]) >>> ROOK_SHIFTS[square]);
+        return ROOK_ATTACKS[square][index];
+    }
+
+    public static long getBishopAttacks(int square, long occupied){
+        int index = (int) (((occupied & BISHOP_MASKS[square]) * BISHOP_MAGICS[square]) >>> BISHOP_SHIFTS[square]);
+        return BISHOP_ATTACKS[square][index];
+    }
+
+    public static long getQueenAttacks(int square, long occupied){
+        return getRookAttacks(square, occupied) | getBishopAttacks(square, occupied);
+    }
+
+    // offsets are given as {column, row} so wrapping around the board edges can be checked directly
+    private static long getOffsetAttacks(int square, int[][] offsets){
+        long attacks = 0L;
+        int column = square % 8;
+        int row = square / 8;
+
+        for (int[] offset : offsets){
+            int targetColumn = column + offset[0];
+            int targetRow = row + offset[1];
+
+            if (targetColumn >= 0 && targetColumn < 8 && targetRow >= 0 && targetRow < 8){
+                attacks |= 1L << (targetRow * 8 + targetColumn);
+            }
+        }
+        return attacks;
+    }
+
+    private static void initialiseMagic(int square, int[][] directions, long[] masks, long magic, int[] shifts,
+                                        long[][] attackTables){
+        // the last square of each ray can never block anything, so it doesn't need to be part of the index
+        long mask = getRelevantBlockerMask(square, directions);
+        int bits = Long.bitCount(mask);
+        long[] table = new long[1 << bits];
+
+        // go through every subset of the mask (carry-rippler trick) and store the attacks it produces
+        long blockers = 0L;
+        do {
+            int index = (int) ((blockers * magic) >>> (64 - bits));
+            table[index] = getSlidingAttacks(square, blockers, directions);
+            blockers = (blockers - mask) & mask;
+        } while (blockers != 0);
+
+        masks[square] = mask;
+        shifts[square] = 64 - bits;
+        attackTables[square] = table;
+    }
+
+    private static long getRelevantBlockerMask(int square, int[][] directions){
+        long mask = 0L;
+        int column = square % 8;
+        int row = square / 8;
+
+        for (int[] direction : directions){
+            int targetColumn = column + direction[0];
+            int targetRow = row + direction[1];
+
+            // stop one square before the edge of the board in that direction
+            while (targetColumn + direction[0] >= 0 && targetColumn + direction[0] < 8
+                    && targetRow + direction[1] >= 0 && targetRow + direction[1] < 8){
+                mask |= 1L << (targetRow * 8 + targetColumn);
+                targetColumn += direction[0];
+                targetRow += direction[1];
+            }
+        }
+        return mask;
+    }
+
+    // walks each ray until it leaves the board or hits a blocker, only used to fill the magic tables
+    private static long getSlidingAttacks(int square, long occupied, int[][] directions){
+        long attacks = 0L;
+        int column = square % 8;
+        int row = square / 8;
+
+        for (int[] direction : directions){
+            int targetColumn = column + direction[0];
+            int targetRow = row + direction[1];
+
+            while (targetColumn >= 0 && targetColumn < 8 && targetRow >= 0 && targetRow < 8){
+                long target = 1L << (targetRow * 8 + targetColumn);
+                attacks |= target;
+
+                if ((occupied & target) != 0){
+                    break;
+                }
+                targetColumn += direction[0];
+                targetRow += direction[1];
+            }
+        }
+        return attacks;
+    }
+}
@@ -0,0 +1,186 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// analyses every position of an EPD (or FEN) file and writes one tab separated line per position, in input order.
+// a reader thread streams the positions to a fixed pool of workers, each with its own board and transposition
+// table, while this thread writes the results. at most a few positions per worker are in flight, so the
+// reader waits for the writer (and memory stays the same) however big the file is
+// usage: BatchAnalysis <input> <output> [threads <n>] [depth <n>] [movetime <ms>] [nodes <n>] [cache <file>]
+public class BatchAnalysis {
+    private static final String HEADER = "position\tid\tbestmove\tscore\tdepth\tnodes\ttime_ms";
+
+    // positions in flight per worker, enough to keep every worker busy while the writer catches up
+    private static final int PENDING_PER_THREAD = 4;
+
+    // marks the end of the input in the pending queue
+    private static final Future<String> END_OF_INPUT = CompletableFuture.completedFuture(null);
+
+    private final int threadCount;
+    private final int depth;
+    private final long moveTime;
+    private final long nodes;
+    // shared by all workers, null for no cache
+    private AnalysisCache analysisCache;
+
+    public BatchAnalysis(int threadCount, int depth, long moveTime, long nodes){
+        if (threadCount < 1){
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        this.threadCount = threadCount;
+        this.depth = depth;
+        this.moveTime = moveTime;
+        this.nodes = nodes;
+    }
+
+    public void setAnalysisCache(AnalysisCache analysisCache){
+        this.analysisCache = analysisCache;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2){
+            System.err.println("usage: BatchAnalysis <input> <output> [threads <n>] [depth <n>] [movetime <ms>] [nodes <n>] [cache <file>]");
+            System.exit(1);
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        int depth = Board.MAX_PLY - 1;
+        long moveTime = Board.NO_TIME_LIMIT;
+        long nodes = Board.NO_NODE_LIMIT;
+        Path cacheFile = null;
+        for (int i = 2; i + 1 < args.length; i += 2){
+            switch (args[i]){
+                case "threads" -> threads = Integer.parseInt(args[i + 1]);
+                case "depth" -> depth = Math.max(1, Math.min(Board.MAX_PLY - 1, Integer.parseInt(args[i + 1])));
+                case "movetime" -> moveTime = Long.parseLong(args[i + 1]);
+                case "nodes" -> nodes = Long.parseLong(args[i + 1]);
+                case "cache" -> cacheFile = Path.of(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        // without a limit a search would never end
+        if (depth == Board.MAX_PLY - 1 && moveTime == Board.NO_TIME_LIMIT && nodes == Board.NO_NODE_LIMIT){
+            moveTime = 1000;
+        }
+
+        BatchAnalysis analysis = new BatchAnalysis(threads, depth, moveTime, nodes);
+        AnalysisCache analysisCache = cacheFile == null ? null : AnalysisCache.open(cacheFile, AnalysisCache.DEFAULT_SIZE_MB);
+        analysis.setAnalysisCache(analysisCache);
+
+        long startNanos = System.nanoTime();
+        long positions = analysis.run(Path.of(args[0]), Path.of(args[1]));
+        if (analysisCache != null){
+            analysisCache.close();
+        }
+        System.err.println("analysed " + positions + " positions in " + (System.nanoTime() - startNanos) / 1_000_000 + "ms");
+    }
+
+    // returns the number of positions analysed
+    public long run(Path input, Path output) throws IOException, InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "batch-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // each worker reuses its board, and so its transposition table, from one position to the next
+        ThreadLocal<Board> boards = ThreadLocal.withInitial(() -> {
+            Board board = new Board();
+            board.setAnalysisCache(analysisCache);
+            return board;
+        });
+
+        // results in input order, the reader blocks on put when the writer is behind
+        BlockingQueue<Future<String>> pending = new ArrayBlockingQueue<>(threadCount * PENDING_PER_THREAD);
+
+        Thread reader = new Thread(() -> {
+            try {
+                try (BufferedReader lines = Files.newBufferedReader(input)){
+                    String line;
+                    while ((line = lines.readLine()) != null){
+                        if (line.isBlank() || line.startsWith("#")){
+                            continue;
+                        }
+                        String position = line;
+                        pending.put(workers.submit(() -> analyse(boards.get(), position)));
+                    }
+                } catch (IOException e) {
+                    // handed to the writer, which stops there
+                    pending.put(CompletableFuture.failedFuture(e));
+                }
+                pending.put(END_OF_INPUT);
+            } catch (InterruptedException e) {
+                // the writer gave up
+            }
+        }, "batch-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        long positions = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(output)){
+            writer.write(HEADER);
+            writer.newLine();
+
+            Future<String> result;
+            while ((result = pending.take()) != END_OF_INPUT){
+                writer.write(result.get());
+                writer.newLine();
+                positions++;
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException){
+                throw ioException;
+            }
+            throw new IllegalStateException("Analysis failed", e.getCause());
+        } finally {
+            reader.interrupt();
+            workers.shutdownNow();
+        }
+        return positions;
+    }
+
+    // one output line, a position that can't be read gets an error line instead of stopping the batch
+    private String analyse(Board board, String line){
+        // EPD: placement, colour, castling, en passant, then operations such as bm and id separated by ';'.
+        // a FEN has move counters after en passant instead, they are ignored either way
+        String[] fields = line.trim().split("\\s+", 5);
+        String position = String.join(" ", Arrays.copyOf(fields, Math.min(fields.length, 4)));
+        String id = fields.length > 4 ? getEpdOperation(fields[4], "id") : "";
+
+        try {
+            board.loadFen(position);
+        } catch (IllegalArgumentException e) {
+            return position + "\t" + id + "\terror: " + e.getMessage() + "\t\t\t\t";
+        }
+        SearchResult result = board.search(depth, moveTime, nodes);
+        Move bestMove = result.getBestMove();
+        // side to move's point of view, like UCI and EPD's ce
+        int score = board.colourToPlay == Colour.White ? result.getEvaluation() : -result.getEvaluation();
+        SearchStatistics statistics = result.getStatistics();
+
+        return position + "\t" + id + "\t" + (bestMove == null ? "0000" : bestMove.toUciString()) + "\t" + score
+                + "\t" + result.getDepth() + "\t" + statistics.getNodes() + "\t" + statistics.getElapsedMillis();
+    }
+
+    // the value of an EPD operation, e.g. id "position 1"; gives position 1
+    private static String getEpdOperation(String operations, String opcode){
+        for (String operation : operations.split(";")){
+            String trimmed = operation.trim();
+            if (trimmed.startsWith(opcode + " ")){
+                return trimmed.substring(opcode.length() + 1).replace("\"", "").trim();
+            }
+        }
+        return "";
+    }
+}
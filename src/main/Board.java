@@ -1,8 +1,20 @@
 package main;
 
+import jdk.jfr.FlightRecorder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 public class Board {
     // array of bitmaps in order: white pawns, black pawns, white knights, ..., black king.
@@ -10,11 +22,115 @@ public class Board {
     // e.g. bishop = 2 and black = 1 => access 2 * 2 + 1 = 5th bitmap
     private final long[] bitboards;
     public Colour colourToPlay;
-    private final List<Move> playedMoves;
+
+    // redundant copies of the bitboards kept in sync by playMove/undoLastMove, so that looking up
+    // the piece on a square or the occupied squares doesn't have to go through all 12 bitboards
+    private final byte[] mailbox;
+    private final long[] colourBitboards;
+    private long occupiedBitboard;
+
+    // zobrist hash of the position, updated incrementally with every move
+    private long zobristKey;
+
+    // material + piece-square scores (white minus black) and game phase, updated incrementally with every move
+    private int middlegameScore;
+    private int endgameScore;
+    private int phase;
+
+    // optional neural network evaluation, used instead of the piece-square tables when set. its accumulators,
+    // one per colour, are kept up to date by playMove/undoLastMove like the scores above
+    private Nnue network;
+    private short[][] accumulators;
+
+    // castling rights still available, one bit each (see WHITE_KING_SIDE...), and the square a pawn that just
+    // moved two squares can be taken on, NO_SQUARE unless a pawn of the colour to play attacks it
+    public static final int WHITE_KING_SIDE = 1;
+    public static final int WHITE_QUEEN_SIDE = 2;
+    public static final int BLACK_KING_SIDE = 4;
+    public static final int BLACK_QUEEN_SIDE = 8;
+    public static final int ALL_CASTLING_RIGHTS = 15;
+    public static final int NO_SQUARE = 64;
+    private int castlingRights;
+    private int enPassantSquare;
+
+    // plies since the last capture or pawn move (for the fifty move rule) and the number of the current move
+    private int halfmoveClock;
+    private int fullmoveNumber;
+
+    // undo stack, one entry per move played so far: the move packed as an int (see MoveUtils, it includes the
+    // captured piece), the state it can't be undone without (see getIrreversibleState) and the zobrist key of the
+    // position it was played in, which repetitions are looked up in. preallocated for a whole game, so playing
+    // and undoing moves never allocates
+    public static final int MAX_GAME_PLIES = 4096;
+    private final int[] playedMoves;
+    private final int[] playedMoveStates;
+    private final long[] playedMoveKeys;
+    private int playedMoveCount;
+
+    // preallocated move buffers, one per ply of search depth
+    public static final int MAX_PLY = 64;
+    public static final int MAX_MOVES = 256;
+    private final int[][] moveBuffers;
+    private final int[][] moveScoreBuffers;
+
+    // number of positions visited by the last search, kept outside of the statistics as the limits check it
+    private long nodeCount;
+    private SearchStatistics statistics = new SearchStatistics();
+
+    // limits of the current search, checked every few thousand nodes
+    public static final long NO_TIME_LIMIT = Long.MAX_VALUE;
+    public static final long NO_NODE_LIMIT = Long.MAX_VALUE;
+    private static final int NODES_BETWEEN_LIMIT_CHECKS = 2048;
+    private long deadlineNanos;
+    private long nodeLimit;
+    private volatile boolean stopRequested;
+    private boolean searchAborted;
+    private long searchStartNanos;
+
+    // told about every completed iteration of the main search thread, e.g. to show progress while searching
+    private Consumer<SearchProgress> searchListener;
+
+    // selective search, everything is on unless switched off for a measurement. copied into the booleans at the
+    // start of each search so the search itself doesn't go through the set
+    private final EnumSet<SearchFeature> searchFeatures = EnumSet.allOf(SearchFeature.class);
+    private boolean principalVariationSearch;
+    private boolean nullMovePruning;
+    private boolean lateMoveReductions;
+    private boolean killerMoves;
+    private boolean historyHeuristic;
+
+    // quiet moves that caused a cutoff, two per ply, and cutoff counts of quiet moves by moving piece and target
+    // square. both only live for one search
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[][] history = new int[12][64];
+
+    // consulted before searching, null when there is no book
+    private PolyglotBook openingBook;
+
+    // results of earlier deep searches, possibly from an earlier session, null when there is no cache
+    private AnalysisCache analysisCache;
+
+    // exact results once few enough pieces are left, null when there are no tables
+    private Tablebases tablebases;
+    private final int[] tablebaseSquares = new int[Tablebase.MAX_PIECES];
+
+    // created on the first search so boards that are never searched don't pay for it
+    public static final int DEFAULT_HASH_SIZE_MB = 16;
+    private TranspositionTable transpositionTable;
+
+    // lazy SMP: helper threads search their own copy of the board at the same time, sharing the transposition
+    // table, so the main thread finds most of its positions already searched. daemon threads so they never
+    // keep the application alive
+    private int threadCount = 1;
+    private static final ExecutorService HELPER_THREADS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "search-helper");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public Board() {
         // starting position
-        this.bitboards = new long[]{
+        this(new long[]{
                 0x000000000000ff00L, // white pawns
                 0x00ff000000000000L, // black pawns
 
@@ -32,390 +148,1874 @@ public class Board {
 
                 0x0000000000000010L, // white king
                 0x1000000000000000L, // black king
+        }, Colour.White);
+    }
+
+    // bitboards in the same order as the bitboards field, the array is copied
+    public Board(long[] bitboards, Colour colourToPlay) {
+        if (bitboards.length != 12){
+            throw new IllegalArgumentException("Expected 12 bitboards, got " + bitboards.length);
+        }
+        this.bitboards = bitboards.clone();
+        this.colourToPlay = colourToPlay;
+        // a side can castle as long as its king and rook are on their starting squares
+        this.castlingRights = getPossibleCastlingRights(ALL_CASTLING_RIGHTS);
+        this.enPassantSquare = NO_SQUARE;
+
+        this.mailbox = new byte[64];
+        this.colourBitboards = new long[2];
+        initialiseSquareLookups();
+        this.fullmoveNumber = 1;
+        this.playedMoves = new int[MAX_GAME_PLIES];
+        this.playedMoveStates = new int[MAX_GAME_PLIES];
+        this.playedMoveKeys = new long[MAX_GAME_PLIES];
+        this.playedMoveCount = 0;
+        this.moveBuffers = new int[MAX_PLY][MAX_MOVES];
+        this.moveScoreBuffers = new int[MAX_PLY][MAX_MOVES];
+    }
+
+    // same order as the bitboards: white pawns, black pawns, white knights, ..., black king
+    private static final String FEN_PIECE_CHARACTERS = "PpNnBbRrQqKk";
+
+    public static Board fromFen(String fen){
+        Board board = new Board();
+        board.loadFen(fen);
+        return board;
+    }
+
+    // replaces this board's position, like loadFrom, so a board can be reused for many positions
+    public void loadFen(String fen){
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 2){
+            throw new IllegalArgumentException("FEN needs at least piece placement and colour to play: " + fen);
+        }
+
+        long[] placement = new long[12];
+
+        // placement starts at the eighth rank, from the a file
+        int rank = 7;
+        int file = 0;
+        for (char c : fields[0].toCharArray()){
+            if (c == '/'){
+                rank--;
+                file = 0;
+            } else if (c >= '1' && c <= '8'){
+                file += c - '0';
+            } else {
+                int bitboardIndex = FEN_PIECE_CHARACTERS.indexOf(c);
+                if (bitboardIndex < 0 || rank < 0 || file > 7){
+                    throw new IllegalArgumentException("Invalid piece placement in FEN: " + fen);
+                }
+                placement[bitboardIndex] |= 1L << (rank * 8 + file);
+                file++;
+            }
+        }
+
+        colourToPlay = switch (fields[1]){
+            case "w" -> Colour.White;
+            case "b" -> Colour.Black;
+            default -> throw new IllegalArgumentException("Invalid colour to play in FEN: " + fen);
         };
 
-        this.colourToPlay = Colour.White;
-        this.playedMoves = new ArrayList<>();
+        int rights = 0;
+        if (fields.length > 2 && !fields[2].equals("-")){
+            for (char c : fields[2].toCharArray()){
+                int right = FEN_CASTLING_CHARACTERS.indexOf(c);
+                if (right < 0){
+                    throw new IllegalArgumentException("Invalid castling rights in FEN: " + fen);
+                }
+                rights |= 1 << right;
+            }
+        }
+
+        int enPassant = NO_SQUARE;
+        if (fields.length > 3 && !fields[3].equals("-")){
+            enPassant = parseSquare(fields[3]);
+            if (enPassant < 0 || (enPassant / 8 != 2 && enPassant / 8 != 5)){
+                throw new IllegalArgumentException("Invalid en passant square in FEN: " + fen);
+            }
+        }
+
+        int halfmoves = 0;
+        int fullmoves = 1;
+        try {
+            if (fields.length > 4){
+                halfmoves = Integer.parseInt(fields[4]);
+            }
+            if (fields.length > 5){
+                fullmoves = Integer.parseInt(fields[5]);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid move counters in FEN: " + fen);
+        }
+        if (halfmoves < 0 || fullmoves < 1){
+            throw new IllegalArgumentException("Invalid move counters in FEN: " + fen);
+        }
+
+        String illegality = getIllegality(placement, colourToPlay);
+        if (illegality != null){
+            throw new IllegalArgumentException(illegality + " in FEN: " + fen);
+        }
+
+        System.arraycopy(placement, 0, bitboards, 0, bitboards.length);
+        halfmoveClock = halfmoves;
+        fullmoveNumber = fullmoves;
+        // rights the pieces don't allow any more are dropped, so the move generator can rely on them
+        castlingRights = getPossibleCastlingRights(rights);
+        enPassantSquare = enPassant != NO_SQUARE && canBeTakenEnPassant(enPassant, colourToPlay.ordinal()) ? enPassant : NO_SQUARE;
+        initialiseSquareLookups();
+        playedMoveCount = 0;
     }
 
-    public List<Move> getLegalMoves(){
-        return calculateAllLegalMoves();
+    // same order as the castling right bits
+    private static final String FEN_CASTLING_CHARACTERS = "KQkq";
+
+    // the move generator and search rely on one king a side, no pawns on the first or last rank and the king of the
+    // colour that just moved being safe (otherwise the search would capture it). null if the placement is fine
+    private static String getIllegality(long[] placement, Colour colourToPlay){
+        for (int colour = 0; colour < 2; colour++){
+            if (Long.bitCount(placement[PieceType.King.ordinal() * 2 + colour]) != 1){
+                return "Need exactly one " + Colour.values()[colour] + " king";
+            }
+        }
+        if (((placement[PieceType.Pawn.ordinal() * 2] | placement[PieceType.Pawn.ordinal() * 2 + 1]) & (AttackTables.RANK_1 | AttackTables.RANK_8)) != 0){
+            return "Pawns on the first or last rank";
+        }
+
+        long[] colourPieces = new long[2];
+        for (int i = 0; i < placement.length; i++){
+            colourPieces[i % 2] |= placement[i];
+        }
+        int waiting = colourToPlay.ordinal() ^ 1;
+        int kingSquare = Long.numberOfTrailingZeros(placement[PieceType.King.ordinal() * 2 + waiting]);
+        if ((getAttackersOfSquare(placement, kingSquare, colourPieces[0] | colourPieces[1]) & colourPieces[waiting ^ 1]) != 0){
+            return "The side not to move is in check";
+        }
+        return null;
     }
 
-    public double evaluatePosition(){
-        // how much the pieces are worth for eval: pawn = 1, knight = 3, bishop = 3.5, rook = 5, queen = 9
-        double[] pieceWeights = new double[]{1, 3, 3.5, 5, 9};
+    // "e3" -> 20, -1 if it isn't a square
+    private static int parseSquare(String name){
+        if (name.length() != 2 || name.charAt(0) < 'a' || name.charAt(0) > 'h' || name.charAt(1) < '1' || name.charAt(1) > '8'){
+            return -1;
+        }
+        return (name.charAt(1) - '1') * 8 + (name.charAt(0) - 'a');
+    }
 
-        // eval will always give white a slight edge
-        double evaluationTotal = 0.2;
+    // the given rights less those whose king or rook has left its starting square
+    private int getPossibleCastlingRights(int rights){
+        long whiteKing = bitboards[PieceType.King.ordinal() * 2];
+        long blackKing = bitboards[PieceType.King.ordinal() * 2 + 1];
+        long whiteRooks = bitboards[PieceType.Rook.ordinal() * 2];
+        long blackRooks = bitboards[PieceType.Rook.ordinal() * 2 + 1];
+
+        if ((whiteKing & (1L << 4)) == 0) rights &= ~(WHITE_KING_SIDE | WHITE_QUEEN_SIDE);
+        if ((blackKing & (1L << 60)) == 0) rights &= ~(BLACK_KING_SIDE | BLACK_QUEEN_SIDE);
+        if ((whiteRooks & (1L << 7)) == 0) rights &= ~WHITE_KING_SIDE;
+        if ((whiteRooks & 1L) == 0) rights &= ~WHITE_QUEEN_SIDE;
+        if ((blackRooks & (1L << 63)) == 0) rights &= ~BLACK_KING_SIDE;
+        if ((blackRooks & (1L << 56)) == 0) rights &= ~BLACK_QUEEN_SIDE;
+        return rights;
+    }
 
-        // skipping king bitboards for evaluation
-        for (int i = 0; i < bitboards.length - 2; i++){
-            // will add or subtract based on if it's white or black's pieces
-            boolean negative = i % 2 == 1;
+    // true if a pawn of the colour could take en passant on the square. pins are ignored (like in polyglot's
+    // hashing), the move generator checks those
+    private boolean canBeTakenEnPassant(int square, int colour){
+        return (AttackTables.PAWN_ATTACKS[colour ^ 1][square] & bitboards[PieceType.Pawn.ordinal() * 2 + colour]) != 0;
+    }
+
+    public String toFen(){
+        StringBuilder fen = new StringBuilder();
+        for (int rank = 7; rank >= 0; rank--){
+            int emptySquares = 0;
+            for (int file = 0; file < 8; file++){
+                int bitboardIndex = mailbox[rank * 8 + file];
+                if (bitboardIndex == MoveUtils.NO_PIECE){
+                    emptySquares++;
+                    continue;
+                }
+                if (emptySquares > 0){
+                    fen.append(emptySquares);
+                    emptySquares = 0;
+                }
+                fen.append(FEN_PIECE_CHARACTERS.charAt(bitboardIndex));
+            }
+            if (emptySquares > 0){
+                fen.append(emptySquares);
+            }
+            if (rank > 0){
+                fen.append('/');
+            }
+        }
+        fen.append(colourToPlay == Colour.White ? " w " : " b ");
+
+        if (castlingRights == 0){
+            fen.append('-');
+        }
+        for (int right = 0; right < 4; right++){
+            if ((castlingRights & (1 << right)) != 0){
+                fen.append(FEN_CASTLING_CHARACTERS.charAt(right));
+            }
+        }
+        fen.append(' ').append(enPassantSquare == NO_SQUARE ? "-" : BoardUtils.getSquareNameFromIndex(enPassantSquare).toLowerCase());
+        fen.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber);
+        return fen.toString();
+    }
 
-            // get the total number of that particular piece on the board
-            int pieceCount = Long.bitCount(bitboards[i]);
-            double totalPieceWorth = pieceCount * pieceWeights[i / 2];
-            evaluationTotal += (negative ? -totalPieceWorth : totalPieceWorth);
+    // fixed width binary encoding of a position, 4 little endian longs whatever the buffer's byte order:
+    // - the occupied squares
+    // - the 4 bit bitboard index of each piece, in square order, 16 pieces per long (2 longs, so at most 32 pieces)
+    // - bit 0: colour to play, bits 1-4: castling rights, bits 8-13: en passant square (0 when there's none, a1
+    //   can never be one), bits 16-31: halfmove clock, the other bits are reserved and written as 0.
+    //   the move number isn't kept, a decoded position starts at move 1
+    public static final int ENCODED_POSITION_BYTES = 32;
+    private static final int MAX_ENCODED_PIECES = 32;
+
+    // writes the position at the buffer's position and advances it, no intermediate copies
+    public void writeTo(ByteBuffer buffer){
+        if (Long.bitCount(occupiedBitboard) > MAX_ENCODED_PIECES){
+            throw new IllegalStateException("Can't encode a position with more than " + MAX_ENCODED_PIECES + " pieces");
+        }
+        // the first 16 pieces go in pieceCodes0 and the rest in pieceCodes1, like loadFrom reads them
+        long pieceCodes0 = 0;
+        long pieceCodes1 = 0;
+        long pieces = occupiedBitboard;
+        for (int i = 0; pieces != 0; i++){
+            long code = (long) mailbox[Long.numberOfTrailingZeros(pieces)] << ((i & 15) * 4);
+            if (i < 16){
+                pieceCodes0 |= code;
+            } else {
+                pieceCodes1 |= code;
+            }
+            pieces &= pieces - 1;
         }
 
-//        System.out.println("Current evaluation: " + evaluationTotal);
-        return evaluationTotal;
+        boolean littleEndian = buffer.order() == ByteOrder.LITTLE_ENDIAN;
+        putLittleEndianLong(buffer, occupiedBitboard, littleEndian);
+        putLittleEndianLong(buffer, pieceCodes0, littleEndian);
+        putLittleEndianLong(buffer, pieceCodes1, littleEndian);
+        long state = colourToPlay.ordinal() | castlingRights << 1 | (enPassantSquare == NO_SQUARE ? 0 : enPassantSquare) << 8
+                | (long) Math.min(halfmoveClock, 0xffff) << 16;
+        putLittleEndianLong(buffer, state, littleEndian);
     }
 
-    private List<Move> calculateAllLegalMoves(){
-        List<Move> moves = new ArrayList<Move>();
+    public static Board readFrom(ByteBuffer buffer){
+        Board board = new Board();
+        board.loadFrom(buffer);
+        return board;
+    }
 
-        for (int i = 0; i < 64; i++){
-            Optional<Piece> piecePresent = getPieceFromSquareIndex(i);
+    // replaces this board's position with the one at the buffer's position and advances it. reusing a board
+    // avoids allocating its search buffers for every position when going through many of them.
+    // the move history is cleared
+    public void loadFrom(ByteBuffer buffer){
+        boolean littleEndian = buffer.order() == ByteOrder.LITTLE_ENDIAN;
+        long occupied = getLittleEndianLong(buffer, littleEndian);
+        long pieceCodes0 = getLittleEndianLong(buffer, littleEndian);
+        long pieceCodes1 = getLittleEndianLong(buffer, littleEndian);
+        long state = getLittleEndianLong(buffer, littleEndian);
+
+        if (Long.bitCount(occupied) > MAX_ENCODED_PIECES){
+            throw new IllegalArgumentException("Invalid encoded position, " + Long.bitCount(occupied) + " pieces");
+        }
 
-            if (piecePresent.isEmpty() || piecePresent.get().getColour() != colourToPlay){
-                continue;
+        Arrays.fill(bitboards, 0L);
+        for (int i = 0; occupied != 0; i++){
+            int bitboardIndex = (int) ((i < 16 ? pieceCodes0 : pieceCodes1) >>> ((i & 15) * 4)) & 15;
+            if (bitboardIndex >= bitboards.length){
+                throw new IllegalArgumentException("Invalid encoded position, piece code " + bitboardIndex);
             }
+            bitboards[bitboardIndex] |= occupied & -occupied;
+            occupied &= occupied - 1;
+        }
+        colourToPlay = (state & 1) == 0 ? Colour.White : Colour.Black;
+        castlingRights = getPossibleCastlingRights((int) (state >>> 1) & ALL_CASTLING_RIGHTS);
+        int enPassant = (int) (state >>> 8) & 63;
+        enPassantSquare = enPassant != 0 && canBeTakenEnPassant(enPassant, colourToPlay.ordinal()) ? enPassant : NO_SQUARE;
+        halfmoveClock = (int) (state >>> 16) & 0xffff;
+        fullmoveNumber = 1;
+
+        initialiseSquareLookups();
+        playedMoveCount = 0;
+    }
+
+    private static void putLittleEndianLong(ByteBuffer buffer, long value, boolean littleEndian){
+        buffer.putLong(littleEndian ? value : Long.reverseBytes(value));
+    }
+
+    private static long getLittleEndianLong(ByteBuffer buffer, boolean littleEndian){
+        long value = buffer.getLong();
+        return littleEndian ? value : Long.reverseBytes(value);
+    }
+
+    // copies the position and move history, search state (buffers, limits, transposition table) is not shared
+    public Board(Board other) {
+        this.bitboards = other.bitboards.clone();
+        this.colourToPlay = other.colourToPlay;
+
+        this.mailbox = other.mailbox.clone();
+        this.colourBitboards = other.colourBitboards.clone();
+        this.occupiedBitboard = other.occupiedBitboard;
+        this.zobristKey = other.zobristKey;
+        this.middlegameScore = other.middlegameScore;
+        this.endgameScore = other.endgameScore;
+        this.phase = other.phase;
+        this.network = other.network;
+        if (other.accumulators != null){
+            this.accumulators = new short[][]{other.accumulators[0].clone(), other.accumulators[1].clone()};
+        }
+        this.castlingRights = other.castlingRights;
+        this.enPassantSquare = other.enPassantSquare;
+
+        this.halfmoveClock = other.halfmoveClock;
+        this.fullmoveNumber = other.fullmoveNumber;
+
+        this.playedMoves = other.playedMoves.clone();
+        this.playedMoveStates = other.playedMoveStates.clone();
+        this.playedMoveKeys = other.playedMoveKeys.clone();
+        this.playedMoveCount = other.playedMoveCount;
+        this.moveBuffers = new int[MAX_PLY][MAX_MOVES];
+        this.moveScoreBuffers = new int[MAX_PLY][MAX_MOVES];
+    }
 
-            // need function that takes in a piece and its position and returns all legal moves
-            moves.addAll(getAllPieceMoves(piecePresent.get(), i));
+    public List<Move> getLegalMoves(){
+        // Move objects are only created here for the GUI, the search works on the packed int moves directly
+        int[] buffer = new int[MAX_MOVES];
+        int moveCount = generateMoves(buffer);
 
+        List<Move> moves = new ArrayList<>(moveCount);
+        for (int i = 0; i < moveCount; i++){
+            moves.add(new Move(buffer[i]));
         }
         return moves;
     }
 
-    private long getWhiteBitboard(){
-        return bitboards[0] | bitboards[2] | bitboards[4] | bitboards[6] | bitboards[8] | bitboards[10];
+    // number of move sequences of the given length from this position, compared against known counts to check
+    // the move generator (see Perft). the last ply only counts the moves instead of playing them
+    public long perft(int depth){
+        return perft(depth, 0);
+    }
+
+    private long perft(int depth, int ply){
+        int[] moves = moveBuffers[ply];
+        int moveCount = generateMoves(moves);
+        if (depth <= 1){
+            return depth == 1 ? moveCount : 1;
+        }
+
+        long nodes = 0;
+        for (int i = 0; i < moveCount; i++){
+            playMove(moves[i]);
+            nodes += perft(depth - 1, ply + 1);
+            undoLastMove();
+        }
+        return nodes;
+    }
+
+    // evaluation in centipawns from white's point of view. the material and piece-square scores (or the network's
+    // accumulators) are kept up to date by playMove/undoLastMove, so all that's left here is blending them by
+    // game phase (or running the network's output layer)
+    public int evaluatePosition(){
+        if (network != null){
+            int score = network.evaluate(accumulators, colourToPlay.ordinal());
+            return colourToPlay == Colour.White ? score : -score;
+        }
+        return Evaluation.taper(middlegameScore, endgameScore, phase);
     }
 
-    private long getBlackBitboard(){
-        return bitboards[1] | bitboards[3] | bitboards[5] | bitboards[7] | bitboards[9] | bitboards[11];
+    // null to go back to the piece-square tables
+    public void setNetwork(Nnue network){
+        this.network = network;
+        this.accumulators = network == null ? null : network.createAccumulators();
+        if (network != null){
+            network.refresh(accumulators, mailbox);
+        }
     }
 
-    private long getBothBitboards(){
-        return getWhiteBitboard() | getBlackBitboard();
+    // fills the buffer with all moves for the colour to play and returns how many were written
+    public int generateMoves(int[] moves){
+        return generateMoves(moves, false);
     }
 
-    private Piece getPieceFromBitboardIndex(int bitboardIndex){
-        Colour pieceColour = (bitboardIndex % 2 == 0) ? Colour.White : Colour.Black;
-        PieceType pieceType = PieceType.values()[bitboardIndex / 2];
-        return new Piece(pieceColour, pieceType);
+    // only the captures, for the quiescence search
+    public int generateCaptures(int[] moves){
+        return generateMoves(moves, true);
     }
 
-    public Optional<Piece> getPieceFromSquareIndex(int squareIndex){
+    // only legal moves are generated: the checkers and the pieces pinned to the king are found once, then the
+    // king only goes to squares that aren't attacked, the other pieces only block or take a single checker, and
+    // pinned pieces stay on the line between their king and the pinning piece
+    private int generateMoves(int[] moves, boolean capturesOnly){
+        int moveCount = 0;
+
+        int colour = colourToPlay.ordinal();
+        long allies = colourBitboards[colour];
+        long enemies = colourBitboards[colour ^ 1];
+        long occupied = occupiedBitboard;
+        int kingBitboardIndex = PieceType.King.ordinal() * 2 + colour;
+        int kingSquare = Long.numberOfTrailingZeros(bitboards[kingBitboardIndex]);
+
+        // the king is taken off the board, so it can't hide from a slider behind itself
+        long kingTargets = AttackTables.KING_ATTACKS[kingSquare] & (capturesOnly ? enemies : ~allies);
+        long occupiedWithoutKing = occupied ^ (1L << kingSquare);
+        while (kingTargets != 0){
+            int targetSquare = Long.numberOfTrailingZeros(kingTargets);
+            kingTargets &= kingTargets - 1;
+            if ((getAttackersOfSquare(targetSquare, occupiedWithoutKing) & enemies) == 0){
+                moveCount = addMove(moves, moveCount, kingBitboardIndex, kingSquare, targetSquare);
+            }
+        }
+
+        long checkers = getAttackersOfSquare(kingSquare, occupied) & enemies;
+        // in double check only the king can move
+        if (Long.bitCount(checkers) > 1){
+            return moveCount;
+        }
+        // in check the other pieces have to take the checker or block it
+        long checkMask = checkers == 0 ? -1L : checkers | AttackTables.BETWEEN[kingSquare][Long.numberOfTrailingZeros(checkers)];
+        long targetMask = (capturesOnly ? enemies : ~allies) & checkMask;
+        long pinned = getPinnedPieces(kingSquare, colour);
+
+        // unpinned pawns are generated for the whole bitboard at once, pinned ones one at a time along their pin
+        int pawnBitboardIndex = PieceType.Pawn.ordinal() * 2 + colour;
+        long pawns = bitboards[pawnBitboardIndex];
+        moveCount = getPawnMoves(moves, moveCount, pawnBitboardIndex, pawns & ~pinned, checkMask, capturesOnly);
+        long pinnedPawns = pawns & pinned;
+        while (pinnedPawns != 0){
+            int position = Long.numberOfTrailingZeros(pinnedPawns);
+            pinnedPawns &= pinnedPawns - 1;
+            moveCount = getPawnMoves(moves, moveCount, pawnBitboardIndex, 1L << position,
+                    checkMask & AttackTables.LINE[kingSquare][position], capturesOnly);
+        }
+        moveCount = getEnPassantMoves(moves, moveCount, pawnBitboardIndex, kingSquare, checkMask);
+
+        // only look at the bitboards of the colour to play, i.e. every other bitboard, the king is done already
+        for (int bitboardIndex = pawnBitboardIndex + 2; bitboardIndex < kingBitboardIndex; bitboardIndex += 2){
+            long pieces = bitboards[bitboardIndex];
+
+            while (pieces != 0){
+                int position = Long.numberOfTrailingZeros(pieces);
+                pieces &= pieces - 1;
+
+                long pieceTargetMask = (pinned & (1L << position)) == 0 ? targetMask : targetMask & AttackTables.LINE[kingSquare][position];
+                moveCount = getAllPieceMoves(moves, moveCount, bitboardIndex, position, pieceTargetMask, occupied);
+            }
+        }
+
+        if (!capturesOnly && checkers == 0){
+            moveCount = getCastlingMoves(moves, moveCount, kingBitboardIndex, kingSquare, colour);
+        }
+        return moveCount;
+    }
+
+    // pieces of the colour that are the only piece between their king and an enemy slider
+    private long getPinnedPieces(int kingSquare, int colour){
+        long enemies = colourBitboards[colour ^ 1];
+        long enemyQueens = bitboards[PieceType.Queen.ordinal() * 2 + (colour ^ 1)];
+        long enemyRooksAndQueens = bitboards[PieceType.Rook.ordinal() * 2 + (colour ^ 1)] | enemyQueens;
+        long enemyBishopsAndQueens = bitboards[PieceType.Bishop.ordinal() * 2 + (colour ^ 1)] | enemyQueens;
+
+        // looking through the colour's own pieces, the first enemy on each line from the king
+        long snipers = (AttackTables.getRookAttacks(kingSquare, enemies) & enemyRooksAndQueens)
+                | (AttackTables.getBishopAttacks(kingSquare, enemies) & enemyBishopsAndQueens);
+
+        long pinned = 0L;
+        while (snipers != 0){
+            int sniperSquare = Long.numberOfTrailingZeros(snipers);
+            snipers &= snipers - 1;
+
+            long blockers = AttackTables.BETWEEN[kingSquare][sniperSquare] & occupiedBitboard;
+            if (Long.bitCount(blockers) == 1){
+                pinned |= blockers;
+            }
+        }
+        return pinned;
+    }
+
+    public boolean isInCheck(){
+        int colour = colourToPlay.ordinal();
+        int kingSquare = Long.numberOfTrailingZeros(bitboards[PieceType.King.ordinal() * 2 + colour]);
+        return (getAttackersOfSquare(kingSquare, occupiedBitboard) & colourBitboards[colour ^ 1]) != 0;
+    }
+
+    private void initialiseSquareLookups(){
+        Arrays.fill(mailbox, (byte) MoveUtils.NO_PIECE);
+        colourBitboards[0] = 0L;
+        colourBitboards[1] = 0L;
+
         for (int i = 0; i < bitboards.length; i++){
-            long bitboard = bitboards[i];
-            if ((bitboard >> squareIndex & 1) != 0){
-                return Optional.of(getPieceFromBitboardIndex(i));
+            long pieces = bitboards[i];
+            colourBitboards[i % 2] |= pieces;
+
+            while (pieces != 0){
+                mailbox[Long.numberOfTrailingZeros(pieces)] = (byte) i;
+                pieces &= pieces - 1;
             }
         }
-        return Optional.empty();
+        occupiedBitboard = colourBitboards[0] | colourBitboards[1];
+        zobristKey = calculateZobristKey();
+
+        middlegameScore = 0;
+        endgameScore = 0;
+        phase = 0;
+        for (int square = 0; square < 64; square++){
+            int bitboardIndex = mailbox[square];
+            if (bitboardIndex != MoveUtils.NO_PIECE){
+                middlegameScore += Evaluation.MIDDLEGAME_SCORES[bitboardIndex][square];
+                endgameScore += Evaluation.ENDGAME_SCORES[bitboardIndex][square];
+                phase += Evaluation.PHASE_WEIGHTS[bitboardIndex / 2];
+            }
+        }
+        if (network != null){
+            network.refresh(accumulators, mailbox);
+        }
     }
 
-    private List<Move> getAllPieceMoves(Piece piece, int position){
-        List<Move> moves = new ArrayList<>();
+    private long calculateZobristKey(){
+        long key = colourToPlay == Colour.Black ? Zobrist.BLACK_TO_PLAY_KEY : 0L;
+        key ^= getStateKey(castlingRights, enPassantSquare);
 
-        switch (piece.getType()){
-            case PieceType.Pawn:
-                moves.addAll(getPawnMoves(piece, position));
-                break;
-            case PieceType.Knight:
-                moves.addAll(getKnightMoves(piece, position));
-                break;
-            case PieceType.Bishop:
-                moves.addAll(getBishopMoves(piece, position));
-                break;
-            case PieceType.Rook:
-                moves.addAll(getRookMoves(piece, position));
-                break;
-            case PieceType.Queen:
-                moves.addAll(getBishopMoves(piece, position));
-                moves.addAll(getRookMoves(piece, position));
-                break;
-            case PieceType.King:
-                moves.addAll(getKingMoves(piece, position));
+        for (int square = 0; square < 64; square++){
+            if (mailbox[square] != MoveUtils.NO_PIECE){
+                key ^= Zobrist.PIECE_KEYS[mailbox[square]][square];
+            }
         }
+        return key;
+    }
 
-        return moves;
+    private static long getStateKey(int castlingRights, int enPassantSquare){
+        long key = Zobrist.CASTLING_KEYS[castlingRights];
+        return enPassantSquare == NO_SQUARE ? key : key ^ Zobrist.EN_PASSANT_KEYS[enPassantSquare % 8];
+    }
+
+    public long getZobristKey(){
+        return zobristKey;
+    }
+
+    int getCastlingRights(){
+        return castlingRights;
+    }
+
+    int getEnPassantSquare(){
+        return enPassantSquare;
+    }
+
+    public Optional<Piece> getPieceFromSquareIndex(int squareIndex){
+        int bitboardIndex = mailbox[squareIndex];
+        return bitboardIndex == MoveUtils.NO_PIECE ? Optional.empty() : Optional.of(Piece.fromBitboardIndex(bitboardIndex));
+    }
+
+    private int addMove(int[] moves, int moveCount, int bitboardIndex, int position, int targetSquare){
+        moves[moveCount] = MoveUtils.encode(position, targetSquare, bitboardIndex, mailbox[targetSquare], MoveUtils.NO_FLAGS);
+        return moveCount + 1;
     }
 
-    private boolean squareOnBoard(int squareIndex){
-        return squareIndex >= 0 && squareIndex <= 63;
+    private int addMoves(int[] moves, int moveCount, int bitboardIndex, int position, long targets){
+        while (targets != 0){
+            moveCount = addMove(moves, moveCount, bitboardIndex, position, Long.numberOfTrailingZeros(targets));
+            targets &= targets - 1;
+        }
+        return moveCount;
     }
 
-    private List<Move> getPawnMoves(Piece piece, int position){
-        List<Move> moves = new ArrayList<>();
-        Colour colour = piece.getColour();
-        long enemies = colour == Colour.White ? getBlackBitboard() : getWhiteBitboard();
+    // values() clones the array on every call
+    private static final PieceType[] PIECE_TYPES = PieceType.values();
+
+    private int getAllPieceMoves(int[] moves, int moveCount, int bitboardIndex, int position, long targetMask, long occupied){
+        long targets = switch (PIECE_TYPES[bitboardIndex / 2]){
+            // pawns and the king have their own generators
+            case PieceType.Pawn, PieceType.King -> 0L;
+            case PieceType.Knight -> AttackTables.KNIGHT_ATTACKS[position];
+            case PieceType.Bishop -> AttackTables.getBishopAttacks(position, occupied);
+            case PieceType.Rook -> AttackTables.getRookAttacks(position, occupied);
+            case PieceType.Queen -> AttackTables.getQueenAttacks(position, occupied);
+        };
 
-        // move up if no other piece and within board
-        int forwardIndex = colour == Colour.White ? position + 8 : position - 8;
+        return addMoves(moves, moveCount, bitboardIndex, position, targets & targetMask);
+    }
 
-        // check if move forward is within board and target square is unoccupied
-        if (squareOnBoard(forwardIndex) && (getBothBitboards() >> forwardIndex & 1) == 0){
-            moves.add(new Move(piece, position, forwardIndex, getPieceFromSquareIndex(forwardIndex)));
+    // moves of the given pawns whose target square is in the mask. a pawn reaching the last rank adds a move per
+    // promotion piece, queen first; with capturesOnly only the captures and the promotions to a queen are added
+    private int getPawnMoves(int[] moves, int moveCount, int bitboardIndex, long pawns, long targetMask, boolean capturesOnly){
+        boolean white = bitboardIndex % 2 == 0;
+        long occupied = occupiedBitboard;
+        long enemies = colourBitboards[bitboardIndex % 2 ^ 1];
+        long promotionRank = white ? AttackTables.RANK_8 : AttackTables.RANK_1;
+
+        // push every pawn forward at once, a double push is a single push from the third (or sixth) rank
+        long singlePushes = (white ? pawns << 8 : pawns >>> 8) & ~occupied;
+        long doublePushes = white ? ((singlePushes & AttackTables.RANK_3) << 8) & ~occupied
+                : ((singlePushes & AttackTables.RANK_6) >>> 8) & ~occupied;
+        singlePushes &= targetMask;
+        doublePushes &= targetMask;
+        if (capturesOnly){
+            singlePushes &= promotionRank;
+            doublePushes = 0L;
+        }
 
-            int currentRow = position / 8;
-            boolean hasNotMoved = colour == Colour.White ? currentRow == 1 : currentRow == 6;
-            int twoForwardIndex = colour == Colour.White ? forwardIndex + 8 : forwardIndex - 8;
+        int forward = white ? 8 : -8;
 
-            // if pawn hasn't moved and square free
-            if (hasNotMoved && (getBothBitboards() >> twoForwardIndex & 1) == 0 ){
-                moves.add(new Move(piece, position, twoForwardIndex, getPieceFromSquareIndex(twoForwardIndex)));
+        while (singlePushes != 0){
+            int targetSquare = Long.numberOfTrailingZeros(singlePushes);
+            singlePushes &= singlePushes - 1;
+            if ((promotionRank & (1L << targetSquare)) != 0){
+                moveCount = addPromotions(moves, moveCount, bitboardIndex, targetSquare - forward, targetSquare, capturesOnly);
+            } else {
+                moves[moveCount++] = MoveUtils.encode(targetSquare - forward, targetSquare, bitboardIndex, MoveUtils.NO_PIECE, MoveUtils.NO_FLAGS);
             }
         }
 
-        // take diagonally if piece of opposite colour there and within board
-        int leftTakeIndex = colour == Colour.White ? position + 7 : position - 9;
+        while (doublePushes != 0){
+            int targetSquare = Long.numberOfTrailingZeros(doublePushes);
+            doublePushes &= doublePushes - 1;
+            moves[moveCount++] = MoveUtils.encode(targetSquare - 2 * forward, targetSquare, bitboardIndex, MoveUtils.NO_PIECE, MoveUtils.DOUBLE_PAWN_PUSH);
+        }
 
-        // must check -> on board, pawn is not on left-most column and opposite coloured piece on target square
-        if (squareOnBoard(leftTakeIndex) && (position % 8 != 0) && ((enemies >> leftTakeIndex & 1) == 1)){
-            moves.add(new Move(piece, position, leftTakeIndex, getPieceFromSquareIndex(leftTakeIndex)));
+        // take diagonally if piece of opposite colour there
+        long[] pawnAttacks = AttackTables.PAWN_ATTACKS[bitboardIndex % 2];
+        while (pawns != 0){
+            int position = Long.numberOfTrailingZeros(pawns);
+            pawns &= pawns - 1;
+
+            long captures = pawnAttacks[position] & enemies & targetMask;
+            while (captures != 0){
+                int targetSquare = Long.numberOfTrailingZeros(captures);
+                captures &= captures - 1;
+                if ((promotionRank & (1L << targetSquare)) != 0){
+                    moveCount = addPromotions(moves, moveCount, bitboardIndex, position, targetSquare, false);
+                } else {
+                    moveCount = addMove(moves, moveCount, bitboardIndex, position, targetSquare);
+                }
+            }
         }
 
-        int rightTakeIndex = colour == Colour.White ? position + 9 : position - 7;
+        return moveCount;
+    }
 
-        if (squareOnBoard(rightTakeIndex) && (position % 8 != 7) && ((enemies >> rightTakeIndex & 1) == 1)){
-            moves.add(new Move(piece, position, rightTakeIndex, getPieceFromSquareIndex(rightTakeIndex)));
+    private int addPromotions(int[] moves, int moveCount, int bitboardIndex, int position, int targetSquare, boolean queenOnly){
+        for (int flags = MoveUtils.QUEEN_PROMOTION; flags >= (queenOnly ? MoveUtils.QUEEN_PROMOTION : MoveUtils.KNIGHT_PROMOTION); flags--){
+            moves[moveCount++] = MoveUtils.encode(position, targetSquare, bitboardIndex, mailbox[targetSquare], flags);
         }
+        return moveCount;
+    }
 
-        return moves;
+    // taking en passant removes two pawns from the same rank, which can uncover an attack on the king that the
+    // pin detection can't see, so each capture is checked by looking for sliders attacking the king afterwards
+    private int getEnPassantMoves(int[] moves, int moveCount, int bitboardIndex, int kingSquare, long checkMask){
+        if (enPassantSquare == NO_SQUARE){
+            return moveCount;
+        }
+        int colour = bitboardIndex % 2;
+        int capturedSquare = enPassantSquare + (colour == 0 ? -8 : 8);
+        // in check the capture has to take the checking pawn (or, in theory, block on the en passant square)
+        if ((checkMask & ((1L << capturedSquare) | (1L << enPassantSquare))) == 0){
+            return moveCount;
+        }
+
+        long enemyQueens = bitboards[PieceType.Queen.ordinal() * 2 + (colour ^ 1)];
+        long enemyRooksAndQueens = bitboards[PieceType.Rook.ordinal() * 2 + (colour ^ 1)] | enemyQueens;
+        long enemyBishopsAndQueens = bitboards[PieceType.Bishop.ordinal() * 2 + (colour ^ 1)] | enemyQueens;
+
+        long capturers = AttackTables.PAWN_ATTACKS[colour ^ 1][enPassantSquare] & bitboards[bitboardIndex];
+        while (capturers != 0){
+            int position = Long.numberOfTrailingZeros(capturers);
+            capturers &= capturers - 1;
+
+            long occupiedAfter = occupiedBitboard ^ (1L << position) ^ (1L << capturedSquare) ^ (1L << enPassantSquare);
+            if ((AttackTables.getRookAttacks(kingSquare, occupiedAfter) & enemyRooksAndQueens) == 0
+                    && (AttackTables.getBishopAttacks(kingSquare, occupiedAfter) & enemyBishopsAndQueens) == 0){
+                moves[moveCount++] = MoveUtils.encode(position, enPassantSquare, bitboardIndex, bitboardIndex ^ 1, MoveUtils.EN_PASSANT);
+            }
+        }
+        return moveCount;
     }
 
-    private List<Move> getBishopMoves(Piece piece, int position){
-        List<Move> moves = new ArrayList<>();
+    // squares between king and rook that have to be empty, by colour then king side / queen side
+    private static final long[][] CASTLING_EMPTY_SQUARES = {{0x60L, 0x0eL}, {0x60L << 56, 0x0eL << 56}};
+
+    // only called when not in check. the rights guarantee that king and rook are on their starting squares,
+    // the king can't pass through or land on an attacked square
+    private int getCastlingMoves(int[] moves, int moveCount, int kingBitboardIndex, int kingSquare, int colour){
+        // shifted so that the colour's rights are in white's bits
+        int rights = castlingRights >>> (2 * colour);
+        long enemies = colourBitboards[colour ^ 1];
+
+        if ((rights & WHITE_KING_SIDE) != 0 && (occupiedBitboard & CASTLING_EMPTY_SQUARES[colour][0]) == 0
+                && (getAttackersOfSquare(kingSquare + 1, occupiedBitboard) & enemies) == 0
+                && (getAttackersOfSquare(kingSquare + 2, occupiedBitboard) & enemies) == 0){
+            moves[moveCount++] = MoveUtils.encode(kingSquare, kingSquare + 2, kingBitboardIndex, MoveUtils.NO_PIECE, MoveUtils.KING_SIDE_CASTLE);
+        }
+        if ((rights & WHITE_QUEEN_SIDE) != 0 && (occupiedBitboard & CASTLING_EMPTY_SQUARES[colour][1]) == 0
+                && (getAttackersOfSquare(kingSquare - 1, occupiedBitboard) & enemies) == 0
+                && (getAttackersOfSquare(kingSquare - 2, occupiedBitboard) & enemies) == 0){
+            moves[moveCount++] = MoveUtils.encode(kingSquare, kingSquare - 2, kingBitboardIndex, MoveUtils.NO_PIECE, MoveUtils.QUEEN_SIDE_CASTLE);
+        }
+        return moveCount;
+    }
 
-        // only need to explore 4 directions, iterate until it finds enemy or ally
-        int squaresUnder = position / 8;
-        int squaresOver = 7 - squaresUnder;
+    public void playMove(Move move){
+        playMove(move.getEncodedMove());
+    }
 
-        int squaresLeft = position % 8;
-        int squaresRight = 7 - squaresLeft;
+    public void playMove(int move){
+        pushUndoEntry(move);
 
-        moves.addAll(exploreDirection(piece, position, 9, Math.min(squaresOver, squaresRight)));
-        moves.addAll(exploreDirection(piece, position, 7, Math.min(squaresOver, squaresLeft)));
-        moves.addAll(exploreDirection(piece, position, -9, Math.min(squaresUnder, squaresLeft)));
-        moves.addAll(exploreDirection(piece, position, -7, Math.min(squaresUnder, squaresRight)));
+        // play move, it should change the relevant bitmaps
+        int movingPieceBitboardIndex = MoveUtils.getMovingPiece(move);
+        int startingSquare = MoveUtils.getStartingSquare(move);
+        int targetSquare = MoveUtils.getTargetSquare(move);
+        long startingSquareMask = 1L << startingSquare;
+        long targetSquareMask = 1L << targetSquare;
+        long moveMask = startingSquareMask | targetSquareMask;
 
-        return moves;
+        // if there is a captured Piece, flip the piece's index in respective bitboard to 0
+        int capturedPieceBitboardIndex = MoveUtils.getCapturedPiece(move);
+        if (capturedPieceBitboardIndex != MoveUtils.NO_PIECE){
+            int capturedSquare = getCapturedSquare(move);
+            bitboards[capturedPieceBitboardIndex] ^= 1L << capturedSquare;
+            colourBitboards[capturedPieceBitboardIndex % 2] ^= 1L << capturedSquare;
+            mailbox[capturedSquare] = MoveUtils.NO_PIECE;
+        }
+
+        // flip bits on starting and target square, a promoted pawn turns into another piece on the target square
+        int placedPieceBitboardIndex = getPlacedPiece(move);
+        bitboards[movingPieceBitboardIndex] ^= startingSquareMask;
+        bitboards[placedPieceBitboardIndex] ^= targetSquareMask;
+        colourBitboards[movingPieceBitboardIndex % 2] ^= moveMask;
+
+        mailbox[startingSquare] = MoveUtils.NO_PIECE;
+        mailbox[targetSquare] = (byte) placedPieceBitboardIndex;
+
+        if (MoveUtils.isCastle(move)){
+            moveRook(movingPieceBitboardIndex % 2, getCastlingRookStartingSquare(move), getCastlingRookTargetSquare(move));
+        }
+        occupiedBitboard = colourBitboards[0] | colourBitboards[1];
+
+        updateZobristKey(move);
+        updateEvaluation(move, 1);
+
+        // pawn moves and captures can never be undone in a game, so no earlier position can come back
+        boolean irreversible = movingPieceBitboardIndex / 2 == PieceType.Pawn.ordinal() || capturedPieceBitboardIndex != MoveUtils.NO_PIECE;
+        halfmoveClock = irreversible ? 0 : halfmoveClock + 1;
+        if (colourToPlay == Colour.Black){
+            fullmoveNumber++;
+        }
+
+        // a right is lost once anything moves from or to its king's or rook's starting square
+        zobristKey ^= getStateKey(castlingRights, enPassantSquare);
+        castlingRights &= CASTLING_RIGHTS_KEPT[startingSquare] & CASTLING_RIGHTS_KEPT[targetSquare];
+        colourToPlay = colourToPlay == Colour.White? Colour.Black : Colour.White;
+
+        int passedSquare = (startingSquare + targetSquare) / 2;
+        enPassantSquare = MoveUtils.getFlags(move) == MoveUtils.DOUBLE_PAWN_PUSH
+                && canBeTakenEnPassant(passedSquare, colourToPlay.ordinal()) ? passedSquare : NO_SQUARE;
+        zobristKey ^= getStateKey(castlingRights, enPassantSquare);
+    }
+
+    // castling rights that survive a move from or to each square
+    private static final int[] CASTLING_RIGHTS_KEPT = new int[64];
+
+    static {
+        Arrays.fill(CASTLING_RIGHTS_KEPT, ALL_CASTLING_RIGHTS);
+        CASTLING_RIGHTS_KEPT[4] &= ~(WHITE_KING_SIDE | WHITE_QUEEN_SIDE);
+        CASTLING_RIGHTS_KEPT[7] &= ~WHITE_KING_SIDE;
+        CASTLING_RIGHTS_KEPT[0] &= ~WHITE_QUEEN_SIDE;
+        CASTLING_RIGHTS_KEPT[60] &= ~(BLACK_KING_SIDE | BLACK_QUEEN_SIDE);
+        CASTLING_RIGHTS_KEPT[63] &= ~BLACK_KING_SIDE;
+        CASTLING_RIGHTS_KEPT[56] &= ~BLACK_QUEEN_SIDE;
     }
 
-    private List<Move> exploreDirection(Piece piece, int position, int direction, int maxMoves){
-        List<Move> moves = new ArrayList<>();
+    // the square the captured piece stood on, which is only not the target square when taking en passant
+    private static int getCapturedSquare(int move){
+        return MoveUtils.isEnPassant(move) ? MoveUtils.getEnPassantCaptureSquare(move) : MoveUtils.getTargetSquare(move);
+    }
 
-        long allies = piece.getColour() == Colour.White ? getWhiteBitboard() : getBlackBitboard();
-        long enemies = piece.getColour() == Colour.White ? getBlackBitboard() : getWhiteBitboard();
+    // the piece standing on the target square after the move
+    private static int getPlacedPiece(int move){
+        return MoveUtils.isPromotion(move) ? MoveUtils.getPromotionPiece(move) : MoveUtils.getMovingPiece(move);
+    }
 
-        for (int i = 1; i <= maxMoves; i++){
-            int targetSquare = position + direction * i;
+    // castling is a king move two squares towards the rook, which then jumps over the king
+    private static int getCastlingRookStartingSquare(int move){
+        int targetSquare = MoveUtils.getTargetSquare(move);
+        return MoveUtils.getFlags(move) == MoveUtils.KING_SIDE_CASTLE ? targetSquare + 1 : targetSquare - 2;
+    }
 
-            if ((allies >> targetSquare & 1) == 1){
-                break;
-            }
+    private static int getCastlingRookTargetSquare(int move){
+        int targetSquare = MoveUtils.getTargetSquare(move);
+        return MoveUtils.getFlags(move) == MoveUtils.KING_SIDE_CASTLE ? targetSquare - 1 : targetSquare + 1;
+    }
 
-            moves.add(new Move(piece, position, targetSquare, getPieceFromSquareIndex(targetSquare)));
+    private void moveRook(int colour, int startingSquare, int targetSquare){
+        int rookBitboardIndex = PieceType.Rook.ordinal() * 2 + colour;
+        long moveMask = (1L << startingSquare) | (1L << targetSquare);
+        bitboards[rookBitboardIndex] ^= moveMask;
+        colourBitboards[colour] ^= moveMask;
+        mailbox[startingSquare] = MoveUtils.NO_PIECE;
+        mailbox[targetSquare] = (byte) rookBitboardIndex;
+    }
 
-            if ((enemies >> targetSquare & 1) == 1){
-                break;
+    // the state a move can't be undone without: castling rights | en passant square << 4 | halfmove clock << 11
+    private int getIrreversibleState(){
+        return castlingRights | enPassantSquare << 4 | halfmoveClock << 11;
+    }
+
+    private void restoreIrreversibleState(int state){
+        castlingRights = state & ALL_CASTLING_RIGHTS;
+        enPassantSquare = (state >>> 4) & 0x7f;
+        halfmoveClock = state >>> 11;
+    }
+
+    private void pushUndoEntry(int move){
+        if (playedMoveCount == MAX_GAME_PLIES){
+            throw new IllegalStateException("Can't play more than " + MAX_GAME_PLIES + " plies in a game");
+        }
+        playedMoves[playedMoveCount] = move;
+        playedMoveStates[playedMoveCount] = getIrreversibleState();
+        playedMoveKeys[playedMoveCount++] = zobristKey;
+    }
+
+    public void undoLastMove(){
+        int move = playedMoves[--playedMoveCount];
+        restoreIrreversibleState(playedMoveStates[playedMoveCount]);
+
+        int movingPieceBitboardIndex = MoveUtils.getMovingPiece(move);
+        int startingSquare = MoveUtils.getStartingSquare(move);
+        int targetSquare = MoveUtils.getTargetSquare(move);
+        long startingSquareMask = 1L << startingSquare;
+        long targetSquareMask = 1L << targetSquare;
+        long moveMask = startingSquareMask | targetSquareMask;
+
+        // flip bits on target and starting square -> moving piece back to starting square
+        bitboards[movingPieceBitboardIndex] ^= startingSquareMask;
+        bitboards[getPlacedPiece(move)] ^= targetSquareMask;
+        colourBitboards[movingPieceBitboardIndex % 2] ^= moveMask;
+
+        mailbox[startingSquare] = (byte) movingPieceBitboardIndex;
+        mailbox[targetSquare] = MoveUtils.NO_PIECE;
+
+        // if there is a captured Piece, flip the piece's index in respective bitboard to 1
+        int capturedPieceBitboardIndex = MoveUtils.getCapturedPiece(move);
+        if (capturedPieceBitboardIndex != MoveUtils.NO_PIECE){
+            int capturedSquare = getCapturedSquare(move);
+            bitboards[capturedPieceBitboardIndex] ^= 1L << capturedSquare;
+            colourBitboards[capturedPieceBitboardIndex % 2] ^= 1L << capturedSquare;
+            mailbox[capturedSquare] = (byte) capturedPieceBitboardIndex;
+        }
+
+        if (MoveUtils.isCastle(move)){
+            moveRook(movingPieceBitboardIndex % 2, getCastlingRookTargetSquare(move), getCastlingRookStartingSquare(move));
+        }
+        occupiedBitboard = colourBitboards[0] | colourBitboards[1];
+
+        // the key from before the move was kept, no need to work it out again
+        zobristKey = playedMoveKeys[playedMoveCount];
+        updateEvaluation(move, -1);
+
+        colourToPlay = colourToPlay == Colour.White? Colour.Black : Colour.White;
+        if (colourToPlay == Colour.Black){
+            fullmoveNumber--;
+        }
+    }
+
+    public int getHalfmoveClock(){
+        return halfmoveClock;
+    }
+
+    public int getFullmoveNumber(){
+        return fullmoveNumber;
+    }
+
+    // how many times the current position occurred before, since the last capture, pawn move or null move.
+    // positions can only repeat with the same colour to play and at least 4 plies apart, so only every other
+    // key needs looking at, and never further back than the halfmove clock
+    public int getRepetitionCount(){
+        int repetitions = 0;
+        for (int i = playedMoveCount - 4; i >= Math.max(0, playedMoveCount - halfmoveClock); i -= 2){
+            if (playedMoveKeys[i] == zobristKey){
+                repetitions++;
             }
         }
-        return moves;
+        return repetitions;
     }
 
-    private List<Move> getRookMoves(Piece piece, int position){
-        List<Move> moves = new ArrayList<>();
+    // a draw by threefold repetition or the fifty move rule, unless the last move was checkmate
+    public boolean isDrawByRule(){
+        if (getRepetitionCount() >= 2){
+            return true;
+        }
+        return halfmoveClock >= 100 && (!isInCheck() || generateMoves(new int[MAX_MOVES]) > 0);
+    }
 
-        // only need to explore 4 directions, iterate until it finds enemy or ally
-        int squaresUnder = position / 8;
-        int squaresOver = 7 - squaresUnder;
+    // neither side can ever mate: only the kings and at most one knight or bishop are left
+    public boolean isInsufficientMaterial(){
+        long kings = bitboards[PieceType.King.ordinal() * 2] | bitboards[PieceType.King.ordinal() * 2 + 1];
+        long minorPieces = bitboards[PieceType.Knight.ordinal() * 2] | bitboards[PieceType.Knight.ordinal() * 2 + 1]
+                | bitboards[PieceType.Bishop.ordinal() * 2] | bitboards[PieceType.Bishop.ordinal() * 2 + 1];
+        return (occupiedBitboard & ~kings) == (occupiedBitboard & minorPieces) && Long.bitCount(minorPieces) <= 1;
+    }
 
-        int squaresLeft = position % 8;
-        int squaresRight = 7 - squaresLeft;
+    // xor is its own inverse, so the same update would both play and undo a move, undoing restores the old key instead
+    private void updateZobristKey(int move){
+        int movingPieceBitboardIndex = MoveUtils.getMovingPiece(move);
+        int capturedPieceBitboardIndex = MoveUtils.getCapturedPiece(move);
 
-        moves.addAll(exploreDirection(piece, position, 8, squaresOver));
-        moves.addAll(exploreDirection(piece, position, 1, squaresRight));
-        moves.addAll(exploreDirection(piece, position, -1, squaresLeft));
-        moves.addAll(exploreDirection(piece, position, -8, squaresUnder));
+        zobristKey ^= Zobrist.PIECE_KEYS[movingPieceBitboardIndex][MoveUtils.getStartingSquare(move)]
+                ^ Zobrist.PIECE_KEYS[getPlacedPiece(move)][MoveUtils.getTargetSquare(move)]
+                ^ Zobrist.BLACK_TO_PLAY_KEY;
 
-        return moves;
+        if (capturedPieceBitboardIndex != MoveUtils.NO_PIECE){
+            zobristKey ^= Zobrist.PIECE_KEYS[capturedPieceBitboardIndex][getCapturedSquare(move)];
+        }
+
+        if (MoveUtils.isCastle(move)){
+            int rookBitboardIndex = PieceType.Rook.ordinal() * 2 + movingPieceBitboardIndex % 2;
+            zobristKey ^= Zobrist.PIECE_KEYS[rookBitboardIndex][getCastlingRookStartingSquare(move)]
+                    ^ Zobrist.PIECE_KEYS[rookBitboardIndex][getCastlingRookTargetSquare(move)];
+        }
     }
 
-    private List<Move> getKnightMoves(Piece piece, int position){
-        List<Move> moves = new ArrayList<>();
+    // direction is 1 when playing the move and -1 when undoing it
+    private void updateEvaluation(int move, int direction){
+        int movingPieceBitboardIndex = MoveUtils.getMovingPiece(move);
+        int placedPieceBitboardIndex = getPlacedPiece(move);
+        int capturedPieceBitboardIndex = MoveUtils.getCapturedPiece(move);
+        int startingSquare = MoveUtils.getStartingSquare(move);
+        int targetSquare = MoveUtils.getTargetSquare(move);
+
+        int middlegameChange = Evaluation.MIDDLEGAME_SCORES[placedPieceBitboardIndex][targetSquare]
+                - Evaluation.MIDDLEGAME_SCORES[movingPieceBitboardIndex][startingSquare];
+        int endgameChange = Evaluation.ENDGAME_SCORES[placedPieceBitboardIndex][targetSquare]
+                - Evaluation.ENDGAME_SCORES[movingPieceBitboardIndex][startingSquare];
+
+        if (capturedPieceBitboardIndex != MoveUtils.NO_PIECE){
+            int capturedSquare = getCapturedSquare(move);
+            middlegameChange -= Evaluation.MIDDLEGAME_SCORES[capturedPieceBitboardIndex][capturedSquare];
+            endgameChange -= Evaluation.ENDGAME_SCORES[capturedPieceBitboardIndex][capturedSquare];
+            phase -= direction * Evaluation.PHASE_WEIGHTS[capturedPieceBitboardIndex / 2];
+        }
 
-        int[] directions = {10, -10, 6, -6, 17, -17, 15, -15};
+        if (placedPieceBitboardIndex != movingPieceBitboardIndex){
+            phase += direction * Evaluation.PHASE_WEIGHTS[placedPieceBitboardIndex / 2];
+        }
 
-        long allies = piece.getColour() == Colour.White ? getWhiteBitboard() : getBlackBitboard();
+        if (MoveUtils.isCastle(move)){
+            int rookBitboardIndex = PieceType.Rook.ordinal() * 2 + movingPieceBitboardIndex % 2;
+            int rookStartingSquare = getCastlingRookStartingSquare(move);
+            int rookTargetSquare = getCastlingRookTargetSquare(move);
+            middlegameChange += Evaluation.MIDDLEGAME_SCORES[rookBitboardIndex][rookTargetSquare]
+                    - Evaluation.MIDDLEGAME_SCORES[rookBitboardIndex][rookStartingSquare];
+            endgameChange += Evaluation.ENDGAME_SCORES[rookBitboardIndex][rookTargetSquare]
+                    - Evaluation.ENDGAME_SCORES[rookBitboardIndex][rookStartingSquare];
+        }
 
-        int startingColumn = position % 8;
+        middlegameScore += direction * middlegameChange;
+        endgameScore += direction * endgameChange;
 
-        for (int direction: directions){
-            int targetSquare = position + direction;
+        if (network != null){
+            updateAccumulators(move, direction);
+        }
+    }
 
-            // if squareIndex outside of 0 and 63, skip move
-            if (!squareOnBoard(targetSquare)){
-                continue;
+    // the same changes as above for the network's inputs: the moving piece, the captured piece and the castling rook
+    private void updateAccumulators(int move, int direction){
+        int movingPieceBitboardIndex = MoveUtils.getMovingPiece(move);
+        int placedPieceBitboardIndex = getPlacedPiece(move);
+        int capturedPieceBitboardIndex = MoveUtils.getCapturedPiece(move);
+        int startingSquare = MoveUtils.getStartingSquare(move);
+        int targetSquare = MoveUtils.getTargetSquare(move);
+        int rookBitboardIndex = PieceType.Rook.ordinal() * 2 + movingPieceBitboardIndex % 2;
+
+        if (direction > 0){
+            network.movePiece(accumulators, movingPieceBitboardIndex, startingSquare, placedPieceBitboardIndex, targetSquare);
+            if (capturedPieceBitboardIndex != MoveUtils.NO_PIECE){
+                network.removePiece(accumulators, capturedPieceBitboardIndex, getCapturedSquare(move));
+            }
+            if (MoveUtils.isCastle(move)){
+                network.movePiece(accumulators, rookBitboardIndex, getCastlingRookStartingSquare(move), rookBitboardIndex, getCastlingRookTargetSquare(move));
             }
+        } else {
+            network.movePiece(accumulators, placedPieceBitboardIndex, targetSquare, movingPieceBitboardIndex, startingSquare);
+            if (capturedPieceBitboardIndex != MoveUtils.NO_PIECE){
+                network.addPiece(accumulators, capturedPieceBitboardIndex, getCapturedSquare(move));
+            }
+            if (MoveUtils.isCastle(move)){
+                network.movePiece(accumulators, rookBitboardIndex, getCastlingRookTargetSquare(move), rookBitboardIndex, getCastlingRookStartingSquare(move));
+            }
+        }
+    }
 
-            int targetColumn = targetSquare % 8;
+    public void setHashSize(int sizeInMb){
+        transpositionTable = new TranspositionTable(sizeInMb);
+    }
 
-            // if wrapped around board
-            if (Math.abs(startingColumn -targetColumn) > 2){
-                continue;
+    public void setTranspositionTable(TranspositionTable transpositionTable){
+        this.transpositionTable = transpositionTable;
+    }
+
+    public void setThreadCount(int threadCount){
+        if (threadCount < 1){
+            throw new IllegalArgumentException("Thread count must be at least 1, got " + threadCount);
+        }
+        this.threadCount = threadCount;
+    }
+
+    public int getThreadCount(){
+        return threadCount;
+    }
+
+    public void setSearchFeatures(Set<SearchFeature> features){
+        searchFeatures.clear();
+        searchFeatures.addAll(features);
+    }
+
+    public void setSearchFeature(SearchFeature feature, boolean enabled){
+        if (enabled){
+            searchFeatures.add(feature);
+        } else {
+            searchFeatures.remove(feature);
+        }
+    }
+
+    public Set<SearchFeature> getSearchFeatures(){
+        return EnumSet.copyOf(searchFeatures);
+    }
+
+    public void setOpeningBook(PolyglotBook openingBook){
+        this.openingBook = openingBook;
+    }
+
+    public void setTablebases(Tablebases tablebases){
+        this.tablebases = tablebases;
+    }
+
+    public void setAnalysisCache(AnalysisCache analysisCache){
+        this.analysisCache = analysisCache;
+    }
+
+    public void setSearchListener(Consumer<SearchProgress> searchListener){
+        this.searchListener = searchListener;
+    }
+
+    public TranspositionTable getTranspositionTable(){
+        if (transpositionTable == null){
+            transpositionTable = new TranspositionTable(DEFAULT_HASH_SIZE_MB);
+        }
+        return transpositionTable;
+    }
+
+    public long getNodeCount(){
+        return nodeCount;
+    }
+
+    // order captures first, most valuable victim then least valuable attacker (MVV-LVA), so that the
+    // moves most likely to cause a cutoff are searched first. indexed by piece type ordinal
+    private static final int[] ORDERING_PIECE_VALUES = {1, 3, 3, 5, 9, 100};
+
+    // hash move first, then captures and promotions, killers, and the other quiet moves by history
+    private static final int HASH_MOVE_SCORE = Integer.MAX_VALUE;
+    private static final int CAPTURE_SCORE = 1_000_000;
+    private static final int FIRST_KILLER_SCORE = 900_000;
+    private static final int SECOND_KILLER_SCORE = 800_000;
+    // history scores are halved once one gets here, so they stay below the killers and recent cutoffs count most
+    private static final int HISTORY_LIMIT = 500_000;
+
+    private void scoreMoves(int[] moves, int[] scores, int moveCount, int hashMove, int ply){
+        for (int i = 0; i < moveCount; i++){
+            int move = moves[i];
+
+            // the best move stored in the transposition table gets searched before anything else
+            if (hashMove != MoveUtils.NO_MOVE && (move & 0xffff) == hashMove){
+                scores[i] = HASH_MOVE_SCORE;
+            } else if (MoveUtils.isCapture(move) || MoveUtils.isPromotion(move)){
+                // a promotion wins the difference between the new piece and the pawn
+                int victimValue = MoveUtils.isCapture(move) ? ORDERING_PIECE_VALUES[MoveUtils.getCapturedPiece(move) / 2] : 0;
+                if (MoveUtils.isPromotion(move)){
+                    victimValue += ORDERING_PIECE_VALUES[MoveUtils.getPromotionPiece(move) / 2] - ORDERING_PIECE_VALUES[PieceType.Pawn.ordinal()];
+                }
+                int attackerValue = ORDERING_PIECE_VALUES[MoveUtils.getMovingPiece(move) / 2];
+                scores[i] = CAPTURE_SCORE + victimValue * 1000 - attackerValue;
+            } else if (killerMoves && move == killers[ply][0]){
+                scores[i] = FIRST_KILLER_SCORE;
+            } else if (killerMoves && move == killers[ply][1]){
+                scores[i] = SECOND_KILLER_SCORE;
+            } else if (historyHeuristic){
+                scores[i] = history[MoveUtils.getMovingPiece(move)][MoveUtils.getTargetSquare(move)];
+            } else {
+                scores[i] = 0;
             }
+        }
+    }
 
-            // if no allies
-            if (((allies >> targetSquare) & 1) == 0){
-                moves.add(new Move(piece, position, targetSquare, getPieceFromSquareIndex(targetSquare)));
+    // selection sort one step at a time, a cutoff usually comes early so sorting the whole list is wasted work
+    private int pickNextMove(int[] moves, int[] scores, int index, int moveCount){
+        int bestIndex = index;
+        for (int i = index + 1; i < moveCount; i++){
+            if (scores[i] > scores[bestIndex]){
+                bestIndex = i;
             }
         }
-        return moves;
+
+        int move = moves[bestIndex];
+        moves[bestIndex] = moves[index];
+        moves[index] = move;
+
+        int score = scores[bestIndex];
+        scores[bestIndex] = scores[index];
+        scores[index] = score;
+
+        return move;
+    }
+
+    // bigger than any evaluation, scores are in centipawns
+    private static final int INFINITY = 1_000_000;
+    // score of a forced mate, less the number of plies to it so that shorter mates are preferred
+    public static final int MATE_SCORE = 100_000;
+
+    // any score past this is a mate, found by the search or in the tablebases
+    private static final int MATE_THRESHOLD = MATE_SCORE - MAX_PLY - Tablebase.MAX_PLIES_TO_MATE;
+
+    // mate scores count plies from the root, but a position can be reached at any ply, so the transposition table
+    // stores them counted from the position itself and they are turned back on the way out
+    private static int toTableScore(int score, int ply){
+        if (score >= MATE_THRESHOLD){
+            return score + ply;
+        }
+        return score <= -MATE_THRESHOLD ? score - ply : score;
+    }
+
+    private static int fromTableScore(int score, int ply){
+        if (score >= MATE_THRESHOLD){
+            return score - ply;
+        }
+        return score <= -MATE_THRESHOLD ? score + ply : score;
     }
 
-    private List<Move> getKingMoves(Piece piece, int position){
-        List<Move> moves = new ArrayList<>();
+    // checkmate on the hundredth ply still wins, which needs the move generator to tell
+    private boolean isFiftyMoveDraw(int ply){
+        return halfmoveClock >= 100 && (!isInCheck() || generateMoves(moveBuffers[ply]) > 0);
+    }
+
+    // score when the colour to play has no legal move: mated in check, a draw otherwise
+    private int getNoMovesScore(int ply){
+        return isInCheck() ? -MATE_SCORE + ply : 0;
+    }
+
+    // negamax formulation of alpha-beta: scores are always from the point of view of the colour to play,
+    // alpha is the score the colour to play is already guaranteed and beta the score the opponent will allow
+    // table values are plies to mate + 1, odd plies being a win for the side to move
+    private static int getTablebaseScore(int value, int ply){
+        if (value == Tablebase.DRAW){
+            return 0;
+        }
+        int pliesToMate = value - 1;
+        int score = MATE_SCORE - ply - pliesToMate;
+        return pliesToMate % 2 == 1 ? score : -score;
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta){
+        // nodes at the horizon are counted by the quiescence search
+        if (depth > 0){
+            nodeCount++;
+        }
+
+        if (nodeCount % NODES_BETWEEN_LIMIT_CHECKS == 0 && limitReached()){
+            searchAborted = true;
+        }
+        // once aborted the result is thrown away, so unwind as fast as possible
+        if (searchAborted){
+            return 0;
+        }
+
+        // a repeated position is scored as a draw the first time it comes back: if repeating was the best either
+        // side could do, it can be repeated again. cutting the cycle straight away saves searching it over and over
+        if (ply > 0 && (getRepetitionCount() > 0 || isFiftyMoveDraw(ply))){
+            return 0;
+        }
+
+        // with few pieces left the tables know the result, the root still searches so that there's a move to play
+        if (tablebases != null && ply > 0 && Long.bitCount(occupiedBitboard) <= Tablebase.MAX_PIECES){
+            int value = tablebases.probe(bitboards, colourToPlay.ordinal(), tablebaseSquares);
+            if (value != Tablebases.NOT_FOUND){
+                statistics.tablebaseHits++;
+                return getTablebaseScore(value, ply);
+            }
+        }
+
+        // at the horizon keep going with captures only, so the score isn't taken in the middle of an exchange
+        if (depth == 0){
+            statistics.leafNodes++;
+            return quiescence(ply, alpha, beta);
+        }
+
+        // a previous search of this position may already answer this one, or at least suggest a good first move
+        long entry = transpositionTable.probe(zobristKey);
+        int hashMove = MoveUtils.NO_MOVE;
+        statistics.transpositionProbes++;
+
+        if (entry != TranspositionTable.NOT_FOUND){
+            statistics.transpositionHits++;
+            hashMove = TranspositionTable.getMove(entry);
+
+            if (TranspositionTable.getDepth(entry) >= depth){
+                int storedEval = fromTableScore(TranspositionTable.getScore(entry), ply);
+
+                switch (TranspositionTable.getBound(entry)){
+                    case TranspositionTable.EXACT:
+                        return storedEval;
+                    case TranspositionTable.LOWER_BOUND:
+                        if (storedEval >= beta) return storedEval;
+                        break;
+                    case TranspositionTable.UPPER_BOUND:
+                        if (storedEval <= alpha) return storedEval;
+                        break;
+                }
+            }
+        }
+
+        // each ply gets its own preallocated buffer, so recursing doesn't overwrite the caller's moves
+        int[] currentLegalMoves = moveBuffers[ply];
+        int[] moveScores = moveScoreBuffers[ply];
+        int moveCount = generateMoves(currentLegalMoves);
+        if (moveCount == 0){
+            return getNoMovesScore(ply);
+        }
+
+        boolean inCheck = isInCheck();
+        // a zero window means this node only has to prove a bound, a principal variation node needs the exact score
+        boolean principalVariationNode = beta - alpha > 1;
+
+        // null move: let the opponent move twice in a row. if a reduced search still fails high, a real move would
+        // almost certainly too. not in check (passing would be illegal), not twice in a row, and not with only
+        // pawns left, where passing can be better than any move (zugzwang) and the test stops working
+        if (nullMovePruning && !principalVariationNode && !inCheck && depth >= NULL_MOVE_MIN_DEPTH
+                && playedMoveCount > 0 && playedMoves[playedMoveCount - 1] != MoveUtils.NO_MOVE
+                && hasPiecesOtherThanPawns(colourToPlay.ordinal())
+                && (colourToPlay == Colour.White ? evaluatePosition() : -evaluatePosition()) >= beta){
+            int reduction = NULL_MOVE_REDUCTION + depth / 6;
+            playNullMove();
+            int eval = -negamax(Math.max(depth - 1 - reduction, 0), ply + 1, -beta, -beta + 1);
+            undoNullMove();
+
+            if (searchAborted){
+                return 0;
+            }
+            if (eval >= beta){
+                statistics.nullMoveCutoffs++;
+                // a mate found after passing isn't a real mate
+                return eval >= MATE_SCORE - MAX_PLY ? beta : eval;
+            }
+        }
+
+        scoreMoves(currentLegalMoves, moveScores, moveCount, hashMove, ply);
 
-        int[] directions = {-1,1,8,-8,7,-7,9,-9};
+        int originalAlpha = alpha;
+        int bestEval = -INFINITY;
+        int bestMove = MoveUtils.NO_MOVE;
 
-        long allies = piece.getColour() == Colour.White ? getWhiteBitboard() : getBlackBitboard();
+        for (int i = 0; i < moveCount; i++) {
+            int move = pickNextMove(currentLegalMoves, moveScores, i, moveCount);
+            boolean quiet = !MoveUtils.isCapture(move) && !MoveUtils.isPromotion(move);
+            // scored from ordering, killers are the only quiet moves scored this high
+            boolean killer = moveScores[i] == FIRST_KILLER_SCORE || moveScores[i] == SECOND_KILLER_SCORE;
 
-        int startingColumn = position % 8;
+            playMove(move);
+            int eval;
+            if (i == 0){
+                eval = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            } else {
+                // late quiet moves rarely matter, so they get a shallower search first. not when either side is
+                // in check, the position is too sharp for that
+                int reduction = 0;
+                if (lateMoveReductions && quiet && !killer && !inCheck && depth >= LATE_MOVE_REDUCTION_MIN_DEPTH
+                        && i >= LATE_MOVE_REDUCTION_MIN_INDEX && !isInCheck()){
+                    reduction = Math.min(LATE_MOVE_REDUCTIONS[Math.min(depth, MAX_PLY - 1)][Math.min(i, MAX_MOVES - 1)], depth - 2);
+                    if (reduction > 0){
+                        statistics.lateMoveReductions++;
+                    }
+                }
+
+                // with principal variation search the later moves only have to be proven no better than alpha
+                int searchBeta = principalVariationSearch ? alpha + 1 : beta;
+                eval = -negamax(depth - 1 - reduction, ply + 1, -searchBeta, -alpha);
 
-        for (int direction: directions){
-            int targetSquare = position + direction;
+                // a reduced move that beats alpha gets the full depth after all
+                if (reduction > 0 && eval > alpha){
+                    statistics.reSearches++;
+                    eval = -negamax(depth - 1, ply + 1, -searchBeta, -alpha);
+                }
+                // and one that beats the zero window gets its exact score
+                if (searchBeta != beta && eval > alpha && eval < beta){
+                    statistics.reSearches++;
+                    eval = -negamax(depth - 1, ply + 1, -beta, -alpha);
+                }
+            }
+            undoLastMove();
 
-            // if squareIndex outside of 0 and 63, skip move
-            if (!squareOnBoard(targetSquare)){
-                continue;
+            if (searchAborted){
+                return 0;
             }
 
-            int targetColumn = targetSquare % 8;
+            if (eval > bestEval){
+                bestEval = eval;
+                bestMove = move;
 
-            // if wrapped around board
-            if (Math.abs(startingColumn -targetColumn) > 1){
-                continue;
+                if (eval > alpha){
+                    alpha = eval;
+                }
+
+                // opponent already has a better option earlier in the tree, no need to look any further
+                if (alpha >= beta){
+                    statistics.betaCutoffs++;
+                    if (i == 0){
+                        statistics.firstMoveBetaCutoffs++;
+                    }
+                    if (quiet){
+                        rememberCutoff(move, depth, ply);
+                    }
+                    break;
+                }
             }
+        }
 
-            // if no allies
-            if (((allies >> targetSquare) & 1) == 0){
-                moves.add(new Move(piece, position, targetSquare, getPieceFromSquareIndex(targetSquare)));
+        int bound = bestEval <= originalAlpha ? TranspositionTable.UPPER_BOUND
+                : bestEval >= beta ? TranspositionTable.LOWER_BOUND
+                : TranspositionTable.EXACT;
+        transpositionTable.store(zobristKey, toTableScore(bestEval, ply), depth, bound, bestMove);
+
+        return bestEval;
+    }
+
+    private static final int NULL_MOVE_MIN_DEPTH = 3;
+    private static final int NULL_MOVE_REDUCTION = 2;
+
+    private static final int LATE_MOVE_REDUCTION_MIN_DEPTH = 3;
+    private static final int LATE_MOVE_REDUCTION_MIN_INDEX = 3;
+    // reduction by depth and move index, growing with both (logarithmically, as the later moves are ordered
+    // by ever weaker guesses)
+    private static final int[][] LATE_MOVE_REDUCTIONS = new int[MAX_PLY][MAX_MOVES];
+
+    static {
+        for (int depth = 1; depth < MAX_PLY; depth++){
+            for (int index = 1; index < MAX_MOVES; index++){
+                LATE_MOVE_REDUCTIONS[depth][index] = (int) (0.75 + Math.log(depth) * Math.log(index) / 2.25);
             }
         }
-        return moves;
     }
 
-    public void playMove(Move move){
-        // play move, it should change the relevant bitmaps
-        // get bitmap index from piece to move,
-        int movingPieceBitboardIndex = getBitboardIndexFromPiece(move.getPieceToMove());
-        // flip bit on starting square
-        bitboards[movingPieceBitboardIndex] ^= 1L << move.getStartingSquare();
+    // a quiet move that caused a cutoff becomes this ply's first killer, and counts for more in the history the
+    // deeper the search it cut
+    private void rememberCutoff(int move, int depth, int ply){
+        if (killerMoves && killers[ply][0] != move){
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
 
-        // if there is a captured Piece, flip the piece's index in respective bitboard to 0
-        if (move.getCapturedPiece().isPresent()){
-            // used to only flip the piece's bitboard index to 0
-            long mask = ~(1L << move.getTargetSquare());
-            int capturedPieceBitboardIndex = getBitboardIndexFromPiece(move.getCapturedPiece().get());
-            bitboards[capturedPieceBitboardIndex] &= mask;
+        if (historyHeuristic){
+            int[] pieceHistory = history[MoveUtils.getMovingPiece(move)];
+            int targetSquare = MoveUtils.getTargetSquare(move);
+            pieceHistory[targetSquare] += depth * depth;
+            if (pieceHistory[targetSquare] >= HISTORY_LIMIT){
+                for (int[] scores : history){
+                    for (int square = 0; square < 64; square++){
+                        scores[square] /= 2;
+                    }
+                }
+            }
         }
+    }
 
-        // flip bit on target square, (sets to 1 as was set to 0 just before)
-        bitboards[movingPieceBitboardIndex] ^= 1L << move.getTargetSquare();
+    private boolean hasPiecesOtherThanPawns(int colour){
+        long pawnsAndKing = bitboards[PieceType.Pawn.ordinal() * 2 + colour] | bitboards[PieceType.King.ordinal() * 2 + colour];
+        return (colourBitboards[colour] & ~pawnsAndKing) != 0;
+    }
 
+    // passes the move to the opponent, recorded as NO_MOVE so the search can tell it was a null move. it resets the
+    // halfmove clock, a position from before it repeating isn't a real repetition
+    private void playNullMove(){
+        pushUndoEntry(MoveUtils.NO_MOVE);
+
+        zobristKey ^= getStateKey(castlingRights, enPassantSquare) ^ getStateKey(castlingRights, NO_SQUARE) ^ Zobrist.BLACK_TO_PLAY_KEY;
+        enPassantSquare = NO_SQUARE;
+        halfmoveClock = 0;
         colourToPlay = colourToPlay == Colour.White? Colour.Black : Colour.White;
-        playedMoves.add(move);
+    }
 
+    private void undoNullMove(){
+        playedMoveCount--;
+        restoreIrreversibleState(playedMoveStates[playedMoveCount]);
+        zobristKey = playedMoveKeys[playedMoveCount];
+        colourToPlay = colourToPlay == Colour.White? Colour.Black : Colour.White;
     }
 
-    public void undoLastMove(){
-        Move move = playedMoves.getLast();
+    // a capture has to be able to win at least this much more than the captured piece to be worth searching
+    private static final int DELTA_PRUNING_MARGIN = 200;
 
-        int movingPieceBitboardIndex = getBitboardIndexFromPiece(move.getPieceToMove());
+    // searches captures until the position is quiet. the colour to play doesn't have to capture, so the static
+    // evaluation (stand pat) is a lower bound on the score. in check there's no standing pat, every evasion
+    // is searched instead so that mates at the horizon are seen
+    private int quiescence(int ply, int alpha, int beta){
+        nodeCount++;
+        statistics.quiescenceNodes++;
 
-        // flip bit on target Square
-        bitboards[movingPieceBitboardIndex] ^= 1L << move.getTargetSquare();
+        if (nodeCount % NODES_BETWEEN_LIMIT_CHECKS == 0 && limitReached()){
+            searchAborted = true;
+        }
+        if (searchAborted){
+            return 0;
+        }
 
-        // if there is a captured Piece, flip the piece's index in respective bitboard to 1
-        if (move.getCapturedPiece().isPresent()){
-            int capturedPieceBitboardIndex = getBitboardIndexFromPiece(move.getCapturedPiece().get());
-            bitboards[capturedPieceBitboardIndex] |= 1L << move.getTargetSquare();
+        int standPat = colourToPlay == Colour.White ? evaluatePosition() : -evaluatePosition();
+        if (ply >= MAX_PLY - 1){
+            return standPat;
         }
 
-        // flip bit on starting square -> moving piece back to starting square
-        bitboards[movingPieceBitboardIndex] ^= 1L << move.getStartingSquare();
+        boolean inCheck = isInCheck();
+        int[] captures = moveBuffers[ply];
+        int[] moveScores = moveScoreBuffers[ply];
+        int bestEval;
+        int moveCount;
 
-        colourToPlay = colourToPlay == Colour.White? Colour.Black : Colour.White;
-        playedMoves.removeLast();
+        if (inCheck){
+            moveCount = generateMoves(captures);
+            if (moveCount == 0){
+                return -MATE_SCORE + ply;
+            }
+            bestEval = -INFINITY;
+        } else {
+            if (standPat >= beta){
+                return standPat;
+            }
+            if (standPat > alpha){
+                alpha = standPat;
+            }
+            moveCount = generateCaptures(captures);
+            bestEval = standPat;
+        }
+        scoreMoves(captures, moveScores, moveCount, MoveUtils.NO_MOVE, ply);
+
+        for (int i = 0; i < moveCount; i++){
+            int move = pickNextMove(captures, moveScores, i, moveCount);
+
+            if (!inCheck){
+                // delta pruning: even winning the captured piece (and promoting) for free wouldn't get the score up to alpha
+                int gain = MoveUtils.isCapture(move) ? Evaluation.PIECE_VALUES[MoveUtils.getCapturedPiece(move) / 2] : 0;
+                if (MoveUtils.isPromotion(move)){
+                    gain += Evaluation.PIECE_VALUES[MoveUtils.getPromotionPiece(move) / 2] - Evaluation.PIECE_VALUES[PieceType.Pawn.ordinal()];
+                }
+                if (standPat + gain + DELTA_PRUNING_MARGIN <= alpha){
+                    continue;
+                }
+
+                // captures that lose material once all the recaptures are played out can't be better than standing pat
+                if (staticExchangeEvaluation(move) < 0){
+                    continue;
+                }
+            }
+
+            playMove(move);
+            int eval = -quiescence(ply + 1, -beta, -alpha);
+            undoLastMove();
+
+            if (searchAborted){
+                return 0;
+            }
+
+            if (eval > bestEval){
+                bestEval = eval;
+
+                if (eval > alpha){
+                    alpha = eval;
+                }
+                if (alpha >= beta){
+                    break;
+                }
+            }
+        }
+        return bestEval;
     }
 
-    private int getBitboardIndexFromPiece(Piece piece){
-        int bitboardIndex = piece.getColour() == Colour.White ? 0 : 1;
+    // values used for exchanges, the king is worth more than everything else together so it's always the last
+    // piece to recapture. indexed by piece type ordinal
+    private static final int[] EXCHANGE_PIECE_VALUES = {100, 300, 350, 500, 900, 20000};
+    private final int[] exchangeGains = new int[32];
+
+    // material won (or lost) by the colour to play if both sides keep recapturing on the target square with their
+    // least valuable piece, each side being free to stop when recapturing would lose material
+    public int staticExchangeEvaluation(int move){
+        int targetSquare = MoveUtils.getTargetSquare(move);
+        int[] gains = exchangeGains;
+        int exchangeCount = 0;
+
+        long occupied = occupiedBitboard ^ (1L << MoveUtils.getStartingSquare(move));
+        int capturedPiece = MoveUtils.getCapturedPiece(move);
+        gains[0] = capturedPiece == MoveUtils.NO_PIECE ? 0 : EXCHANGE_PIECE_VALUES[capturedPiece / 2];
+
+        // value of the piece now standing on the target square, which the other side can capture next
+        int pieceOnTargetValue = EXCHANGE_PIECE_VALUES[MoveUtils.getMovingPiece(move) / 2];
+        int colour = colourToPlay.ordinal() ^ 1;
+
+        while (true){
+            // recalculated every time so sliders behind the pieces that already captured (x-rays) are included
+            long attackers = getAttackersOfSquare(targetSquare, occupied) & occupied;
+
+            int attackerBitboardIndex = MoveUtils.NO_PIECE;
+            for (int bitboardIndex = colour; bitboardIndex < bitboards.length; bitboardIndex += 2){
+                if ((bitboards[bitboardIndex] & attackers) != 0){
+                    attackerBitboardIndex = bitboardIndex;
+                    break;
+                }
+            }
+            if (attackerBitboardIndex == MoveUtils.NO_PIECE){
+                break;
+            }
 
-        return switch (piece.getType()) {
-            case PieceType.Pawn -> bitboardIndex;
-            case PieceType.Knight -> bitboardIndex + 2;
-            case PieceType.Bishop -> bitboardIndex + 4;
-            case PieceType.Rook -> bitboardIndex + 6;
-            case PieceType.Queen -> bitboardIndex + 8;
-            case PieceType.King -> bitboardIndex + 10;
-        };
+            exchangeCount++;
+            gains[exchangeCount] = pieceOnTargetValue - gains[exchangeCount - 1];
+
+            long attacker = bitboards[attackerBitboardIndex] & attackers;
+            occupied ^= attacker & -attacker;
+            pieceOnTargetValue = EXCHANGE_PIECE_VALUES[attackerBitboardIndex / 2];
+            colour ^= 1;
+        }
+
+        // each side only recaptures if that's better for it than stopping
+        while (exchangeCount > 0){
+            gains[exchangeCount - 1] = -Math.max(-gains[exchangeCount - 1], gains[exchangeCount]);
+            exchangeCount--;
+        }
+        return gains[0];
     }
 
-    private double minimax(int depth, boolean maximising){
-        if (depth == 0){
-            return evaluatePosition();
+    // every piece of either colour attacking the square, with sliders blocked by the given occupancy
+    private long getAttackersOfSquare(int square, long occupied){
+        return getAttackersOfSquare(bitboards, square, occupied);
+    }
+
+    private static long getAttackersOfSquare(long[] bitboards, int square, long occupied){
+        long bishopsAndQueens = bitboards[4] | bitboards[5] | bitboards[8] | bitboards[9];
+        long rooksAndQueens = bitboards[6] | bitboards[7] | bitboards[8] | bitboards[9];
+
+        // a white pawn attacks the square if a black pawn on the square would attack the white pawn, and vice versa
+        return (AttackTables.PAWN_ATTACKS[Colour.Black.ordinal()][square] & bitboards[0])
+                | (AttackTables.PAWN_ATTACKS[Colour.White.ordinal()][square] & bitboards[1])
+                | (AttackTables.KNIGHT_ATTACKS[square] & (bitboards[2] | bitboards[3]))
+                | (AttackTables.KING_ATTACKS[square] & (bitboards[10] | bitboards[11]))
+                | (AttackTables.getBishopAttacks(square, occupied) & bishopsAndQueens)
+                | (AttackTables.getRookAttacks(square, occupied) & rooksAndQueens);
+    }
+
+    // depth 1 is always finished: it takes next to no time, and without it there would be neither a move nor a
+    // score to report
+    private boolean limitReached(){
+        if (iterationDepth == 1){
+            return false;
         }
-        
-        List<Move> currentLegalMoves = getLegalMoves();
+        return stopRequested || nodeCount >= nodeLimit || System.nanoTime() >= deadlineNanos;
+    }
 
-        if (maximising){
-            double alpha = Double.NEGATIVE_INFINITY;
+    // can be called from another thread, the search then returns the best move of its last completed depth.
+    // a stop that arrives before the search has started still stops it, the request is only cleared once
+    // the search is over
+    public void stopSearch(){
+        stopRequested = true;
+    }
 
-            for (Move legalMove : currentLegalMoves) {
-                playMove(legalMove);
-                double eval = minimax(depth - 1, false);
-                undoLastMove();
-                alpha = Math.max(alpha, eval);
+    public Move findBestMove(int depth) {
+        return search(depth, NO_TIME_LIMIT, NO_NODE_LIMIT).getBestMove();
+    }
+
+    public Move findBestMoveInTime(long timeBudgetMillis) {
+        return search(MAX_PLY - 1, timeBudgetMillis, NO_NODE_LIMIT).getBestMove();
+    }
+
+    public Move findBestMoveInTime(long timeBudgetMillis, long nodeLimit) {
+        return search(MAX_PLY - 1, timeBudgetMillis, nodeLimit).getBestMove();
+    }
+
+    private void prepareSearch(long deadlineNanos, long nodeLimit){
+        this.deadlineNanos = deadlineNanos;
+        this.nodeLimit = nodeLimit;
+        this.searchAborted = false;
+        this.nodeCount = 1;
+        this.statistics = new SearchStatistics();
+
+        principalVariationSearch = searchFeatures.contains(SearchFeature.PrincipalVariationSearch);
+        nullMovePruning = searchFeatures.contains(SearchFeature.NullMovePruning);
+        lateMoveReductions = searchFeatures.contains(SearchFeature.LateMoveReductions);
+        killerMoves = searchFeatures.contains(SearchFeature.KillerMoves);
+        historyHeuristic = searchFeatures.contains(SearchFeature.HistoryHeuristic);
+        for (int[] plyKillers : killers){
+            Arrays.fill(plyKillers, MoveUtils.NO_MOVE);
+        }
+        for (int[] pieceHistory : history){
+            Arrays.fill(pieceHistory, 0);
+        }
+    }
+
+    // iterative deepening search up to maxDepth, stopping early at the time budget or node limit
+    public SearchResult search(int maxDepth, long timeBudgetMillis, long nodeLimit) {
+        // known positions are answered straight from the book, without searching
+        if (openingBook != null){
+            int bookMove = openingBook.getMove(this);
+            if (bookMove != MoveUtils.NO_MOVE){
+                statistics = new SearchStatistics();
+                stopRequested = false;
+                return new SearchResult(new Move(bookMove), evaluatePosition(), statistics);
             }
-            return alpha;
-        }else{
-            double beta = Double.POSITIVE_INFINITY;
+        }
+
+        // so are positions searched deeply enough before
+        SearchResult cachedResult = probeAnalysisCache(maxDepth, timeBudgetMillis, nodeLimit);
+        if (cachedResult != null){
+            return cachedResult;
+        }
+
+        // loading the event classes is slow, so events are only created once flight recorder is running
+        SearchEvent event = FlightRecorder.isInitialized() ? new SearchEvent() : null;
+        if (event != null){
+            event.begin();
+        }
+
+        long startNanos = System.nanoTime();
+        searchStartNanos = startNanos;
+        prepareSearch(timeBudgetMillis == NO_TIME_LIMIT ? Long.MAX_VALUE : startNanos + timeBudgetMillis * 1_000_000, nodeLimit);
+        getTranspositionTable().newSearch();
+
+        // helpers get the same limits (the node limit applies per thread), half of them start a depth deeper
+        // so that the threads don't all search the same depth in lockstep
+        Board[] helpers = new Board[threadCount - 1];
+        List<Future<?>> helperResults = new ArrayList<>();
+        for (int i = 0; i < helpers.length; i++){
+            Board helper = new Board(this);
+            helper.transpositionTable = transpositionTable;
+            helper.tablebases = tablebases;
+            helper.setSearchFeatures(searchFeatures);
+            helper.prepareSearch(deadlineNanos, nodeLimit);
+            helpers[i] = helper;
+
+            int startDepth = 1 + (i + 1) % 2;
+            helperResults.add(HELPER_THREADS.submit(() -> helper.deepen(startDepth, maxDepth)));
+        }
+
+        int bestMove = deepen(1, maxDepth);
+
+        // the main thread's result is the one reported, the helpers only existed to fill the transposition table
+        statistics.nodes = nodeCount;
+        for (int i = 0; i < helpers.length; i++){
+            helpers[i].stopSearch();
+            try {
+                helperResults.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Search helper thread failed", e.getCause());
+            }
+            helpers[i].statistics.nodes = helpers[i].nodeCount;
+            statistics.addCounters(helpers[i].statistics);
+        }
+        statistics.elapsedNanos = System.nanoTime() - startNanos;
+
+        // report the eval from white's point of view, like evaluatePosition does
+        int bestEval = colourToPlay == Colour.White ? completedScore : -completedScore;
+        Move bestMoveFound = bestMove == MoveUtils.NO_MOVE ? null : new Move(bestMove);
+        SearchResult result = new SearchResult(bestMoveFound, bestEval, statistics);
 
-            for (Move legalMove : currentLegalMoves) {
-                playMove(legalMove);
-                double eval = minimax(depth - 1, true);
+        // a result that may have been shaped by the game's history would be wrong when the position comes up elsewhere
+        if (analysisCache != null && bestMove != MoveUtils.NO_MOVE && statistics.getCompletedDepth() >= analysisCache.getMinimumDepth()
+                && isHistoryIndependent(statistics.getCompletedDepth())){
+            analysisCache.store(zobristKey, bestMove, bestEval, statistics.getCompletedDepth());
+        }
+
+        SearchMonitor.INSTANCE.record(statistics);
+        if (event != null && event.shouldCommit()){
+            event.colourToPlay = colourToPlay.toString();
+            event.bestMove = String.valueOf(bestMoveFound);
+            event.depth = statistics.getCompletedDepth();
+            event.threads = threadCount;
+            event.nodes = statistics.getNodes();
+            event.leafNodes = statistics.getLeafNodes();
+            event.quiescenceNodes = statistics.getQuiescenceNodes();
+            event.nodesPerSecond = statistics.getNodesPerSecond();
+            event.firstMoveCutoffRatio = statistics.getFirstMoveCutoffRatio();
+            event.transpositionHitRate = statistics.getTranspositionHitRate();
+            event.commit();
+        }
+
+        stopRequested = false;
+        return result;
+    }
+
+    // a search limited by depth needs a cached result at least that deep, one limited by time or nodes takes any,
+    // as everything in the cache was searched deeply, and one without limits (infinite analysis) always searches.
+    // the stored move is checked against the legal moves, the key alone could belong to another position.
+    // the key doesn't cover the game's history either, so the cache is left alone once the history matters: when the
+    // position has already occurred, or when the fifty move rule comes within reach of the search
+    private SearchResult probeAnalysisCache(int maxDepth, long timeBudgetMillis, long nodeLimit){
+        boolean depthLimited = maxDepth < MAX_PLY - 1;
+        if (analysisCache == null || (!depthLimited && timeBudgetMillis == NO_TIME_LIMIT && nodeLimit == NO_NODE_LIMIT)){
+            return null;
+        }
+        long entry = analysisCache.probe(zobristKey);
+        if (entry == AnalysisCache.NOT_FOUND || (depthLimited && AnalysisCache.getDepth(entry) < maxDepth)
+                || !isHistoryIndependent(AnalysisCache.getDepth(entry))){
+            return null;
+        }
+
+        int[] legalMoves = moveBuffers[0];
+        int moveCount = generateMoves(legalMoves);
+        for (int i = 0; i < moveCount; i++){
+            if ((legalMoves[i] & 0xffff) == AnalysisCache.getMove(entry)){
+                // the move was chosen without this game's history, one that repeats an earlier position is searched
+                // again, so a won game isn't thrown away to a threefold
+                playMove(legalMoves[i]);
+                boolean repeats = getRepetitionCount() > 0;
                 undoLastMove();
-                beta = Math.min(beta, eval);
+                if (repeats){
+                    return null;
+                }
+
+                statistics = new SearchStatistics();
+                statistics.completedDepth = AnalysisCache.getDepth(entry);
+                stopRequested = false;
+                return new SearchResult(new Move(legalMoves[i]), AnalysisCache.getScore(entry), statistics);
             }
+        }
+        return null;
+    }
 
-            return beta;
+    // true if the position hasn't occurred before and a search to this depth can't reach the fifty move rule.
+    // a cached move that repeats a position is caught when it is probed, repetitions deeper in the line are missed
+    private boolean isHistoryIndependent(int depth){
+        return getRepetitionCount() == 0 && halfmoveClock + depth < 100;
+    }
+
+    // score of the last iteration completed by deepen, and the depth of the one being searched
+    private int completedScore;
+    private int iterationDepth;
+
+    // searches depth startDepth, startDepth + 1... until maxDepth or a limit is hit. each iteration is cheap
+    // compared to the next one and leaves its best moves in the transposition table, which makes the next
+    // iteration's ordering better. returns the best move of the last completed iteration
+    private int deepen(int startDepth, int maxDepth){
+        int[] currentLegalMoves = moveBuffers[0];
+        int moveCount = generateMoves(currentLegalMoves);
+
+        int bestMove = MoveUtils.NO_MOVE;
+        completedScore = -INFINITY;
+
+        for (int depth = startDepth; depth <= maxDepth; depth++){
+            long iterationStartNodes = nodeCount;
+            long iterationStartNanos = System.nanoTime();
+            iterationDepth = depth;
+
+            // previous iteration's best move is searched first
+            long entry = transpositionTable.probe(zobristKey);
+            int hashMove = entry == TranspositionTable.NOT_FOUND ? bestMove : TranspositionTable.getMove(entry);
+
+            int iterationBestMove = searchRoot(depth, currentLegalMoves, moveCount, hashMove);
+
+            if (searchAborted){
+                break;
+            }
+
+            bestMove = iterationBestMove;
+            completedScore = rootScore;
+            statistics.completedDepth = depth;
+            statistics.iterationNodes[depth] = nodeCount - iterationStartNodes;
+            statistics.iterationNanos[depth] = System.nanoTime() - iterationStartNanos;
+
+            if (searchListener != null){
+                long elapsedMillis = (System.nanoTime() - searchStartNanos) / 1_000_000;
+                int evaluation = colourToPlay == Colour.White ? completedScore : -completedScore;
+                searchListener.accept(new SearchProgress(depth, evaluation, nodeCount, elapsedMillis,
+                        getPrincipalVariation(depth)));
+            }
         }
+        return bestMove;
     }
 
-    public Move findBestMove(int depth) {
-        Move bestMove = null;
-        boolean maximising = (colourToPlay == Colour.White);
+    // follows the best moves stored in the transposition table from the current position
+    private List<Move> getPrincipalVariation(int maxLength){
+        List<Move> principalVariation = new ArrayList<>();
+        int[] moves = new int[MAX_MOVES];
 
-        double bestEval = maximising ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        while (principalVariation.size() < maxLength){
+            long entry = transpositionTable.probe(zobristKey);
+            if (entry == TranspositionTable.NOT_FOUND){
+                break;
+            }
 
-        List<Move> currentLegalMoves = getLegalMoves();
+            // the table only stores the lower 16 bits of the move, so look for the full move among the legal ones
+            int hashMove = TranspositionTable.getMove(entry);
+            int moveCount = generateMoves(moves);
+            int move = MoveUtils.NO_MOVE;
+            for (int i = 0; i < moveCount; i++){
+                if ((moves[i] & 0xffff) == hashMove){
+                    move = moves[i];
+                    break;
+                }
+            }
+            if (move == MoveUtils.NO_MOVE){
+                break;
+            }
 
-        for (Move legalMove : currentLegalMoves) {
-            playMove(legalMove);
-            double eval = minimax(depth - 1, !maximising);
+            principalVariation.add(new Move(move));
+            playMove(move);
+        }
+
+        for (int i = 0; i < principalVariation.size(); i++){
             undoLastMove();
+        }
+        return principalVariation;
+    }
 
-            if (maximising) {
-                if (eval > bestEval) {
-                    bestEval = eval;
-                    bestMove = legalMove;
-                }
+    // score of the best move found by the last call to searchRoot
+    private int rootScore;
+
+    private int searchRoot(int depth, int[] currentLegalMoves, int moveCount, int hashMove){
+        int bestMove = MoveUtils.NO_MOVE;
+
+        int alpha = -INFINITY;
+        int beta = INFINITY;
+
+        int[] moveScores = moveScoreBuffers[0];
+        scoreMoves(currentLegalMoves, moveScores, moveCount, hashMove, 0);
+
+        for (int i = 0; i < moveCount; i++) {
+            int legalMove = pickNextMove(currentLegalMoves, moveScores, i, moveCount);
+
+            playMove(legalMove);
+            int eval;
+            if (i == 0 || !principalVariationSearch){
+                eval = -negamax(depth - 1, 1, -beta, -alpha);
             } else {
-                if (eval < bestEval) {
-                    bestEval = eval;
-                    bestMove = legalMove;
+                eval = -negamax(depth - 1, 1, -alpha - 1, -alpha);
+                if (eval > alpha){
+                    statistics.reSearches++;
+                    eval = -negamax(depth - 1, 1, -beta, -alpha);
                 }
             }
+            undoLastMove();
+
+            if (searchAborted){
+                break;
+            }
+
+            if (eval > alpha) {
+                alpha = eval;
+                bestMove = legalMove;
+            }
+        }
+
+        if (moveCount == 0){
+            alpha = getNoMovesScore(0);
+        }
+        if (!searchAborted){
+            transpositionTable.store(zobristKey, toTableScore(alpha, 0), depth, TranspositionTable.EXACT, bestMove);
         }
 
-        System.out.println("Best eval for " + colourToPlay + ": " + bestEval + " with move: " + bestMove);
+        rootScore = alpha;
         return bestMove;
     }
 
@@ -4,26 +4,87 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Optional;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 class BoardGraphics extends JPanel {
     static Board board = new Board();
     static int SQUARE_SIZE = 100;
+    static long ENGINE_THINK_TIME_MS = 1000;
     private List<Move> possibleMoves = new ArrayList<>();
 
+    private static final Color DARK_SQUARE_COLOUR = new Color(160, 82, 45);
+    private static final Color LIGHT_SQUARE_COLOUR = new Color(222, 184, 135);
+    private static final Color POSSIBLE_MOVE_COLOUR = new Color(180, 180, 180, 255);
+    private static final int CIRCLE_SIZE = 20;
+
+    // drawn once: the empty board, and every piece already scaled to a square (indexed by bitboard index),
+    // so a repaint only copies images. repaints are limited to the squares that changed
+    private BufferedImage background;
+    private final BufferedImage[] pieceImages = new BufferedImage[12];
+    // the engine searches in the background, the board is only ever touched on the event dispatch thread
+    private final EngineService engine = new EngineService();
+    private AnalysisCache analysisCache;
+    private CompletableFuture<SearchResult> engineSearch;
+    private JFrame frame;
+
     public void start(){
+        // java -Dbook=<polyglot .bin> main.Main to let the engine play from an opening book
+        engine.setOpeningBook(loadFromProperty("book", "opening book", PolyglotBook::open));
+        // -Dtablebases=<directory of .dtm files from TablebaseGenerator> for perfect play in small endgames
+        engine.setTablebases(loadFromProperty("tablebases", "tablebases", Tablebases::open));
+        // -Dnnue=<network file> to evaluate with a neural network instead of the piece-square tables
+        engine.setNetwork(loadFromProperty("nnue", "network", Nnue::load));
+        // -Danalysis.cache=<file> to keep deep search results between sessions, the file is created if needed
+        analysisCache = loadFromProperty("analysis.cache", "analysis cache", path -> AnalysisCache.open(path, AnalysisCache.DEFAULT_SIZE_MB));
+        engine.setAnalysisCache(analysisCache);
         javax.swing.SwingUtilities.invokeLater(this::createAndShowGUI);
     }
 
+    private interface FileLoader<T> {
+        T load(Path path) throws IOException;
+    }
+
+    // loads the file named by a system property, null when the property isn't set or the file can't be read,
+    // the engine then plays without it
+    private static <T> T loadFromProperty(String property, String description, FileLoader<T> loader){
+        String path = System.getProperty(property);
+        if (path == null){
+            return null;
+        }
+        try {
+            return loader.load(Path.of(path));
+        } catch (IOException e) {
+            System.err.println("Can't open " + description + " " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
     // need to on the click of a square, extract the square index and find all possible moves where
     // the starting square is square index
     public void createAndShowGUI() {
         //Create and set up the window.
-        JFrame frame = new JFrame("My Chess Engine");
+        frame = new JFrame("My Chess Engine");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosing(java.awt.event.WindowEvent e) {
+                if (engineSearch != null){
+                    engineSearch.cancel(true);
+                }
+                engine.close();
+                if (analysisCache != null){
+                    analysisCache.close();
+                }
+            }
+        });
 
+        createImages();
         frame.add(this);
 
         frame.addMouseListener(new MouseAdapter() {
@@ -37,30 +98,33 @@ class BoardGraphics extends JPanel {
 
             @Override
             public void mouseReleased(MouseEvent me) {
+                // the user can't move while the engine is thinking
+                if (isEngineThinking()){
+                    return;
+                }
                 Point releasePoint = me.getPoint();
                 // Check if the release point is close to the press point (within a few pixels)
                 if (pressPoint.distance(releasePoint) < 10) {  // 10 pixels tolerance for slight movement
                     // Treat this as a valid click
                     int clickedSquare = getSquareClicked(me.getX(), me.getY());
 
+                    // promotions are generated queen first, so a pawn reaching the last rank becomes a queen
                     for (Move possibleMove : possibleMoves){
                         if (possibleMove.getTargetSquare() == clickedSquare){
                             board.playMove(possibleMove);
+                            repaintPossibleMoves();
                             possibleMoves = new ArrayList<>();
-                            repaint();
+                            repaintMove(possibleMove);
                             if (board.colourToPlay == Colour.Black) {
-                                new javax.swing.Timer(100, e -> {
-                                    board.playMove(board.findBestMove(5));
-                                    repaint();
-                                    ((javax.swing.Timer)e.getSource()).stop();
-                                }).start();
+                                playEngineMove();
                             }
                             return;
                         }
                     }
 
+                    repaintPossibleMoves();
                     possibleMoves = getPossibleMoves(clickedSquare);
-                    repaint();
+                    repaintPossibleMoves();
                 }
             }
         });
@@ -71,46 +135,118 @@ class BoardGraphics extends JPanel {
     }
 
 
+    private boolean isEngineThinking(){
+        return engineSearch != null && !engineSearch.isDone();
+    }
+
+    // the search runs on the engine's thread, progress and the chosen move are posted back to the event
+    // dispatch thread so the board keeps repainting while the engine thinks
+    private void playEngineMove(){
+        engineSearch = engine.searchInTime(board, ENGINE_THINK_TIME_MS,
+                progress -> SwingUtilities.invokeLater(() -> showProgress(progress)));
+
+        engineSearch.thenAcceptAsync(result -> {
+            frame.setTitle("My Chess Engine");
+            if (result.getBestMove() != null){
+                board.playMove(result.getBestMove());
+                repaintMove(result.getBestMove());
+            }
+        }, SwingUtilities::invokeLater).exceptionally(exception -> {
+            // a cancelled search plays nothing
+            if (!engineSearch.isCancelled()){
+                exception.printStackTrace();
+            }
+            return null;
+        });
+    }
+
+    private void showProgress(SearchProgress progress){
+        if (isEngineThinking()){
+            frame.setTitle("My Chess Engine - thinking, depth " + progress.getDepth() + ", " + progress.getBestMove());
+        }
+    }
+
     public Dimension getPreferredSize() {
         return new Dimension(8 * SQUARE_SIZE,8 * SQUARE_SIZE);
     }
 
+    private void createImages(){
+        background = new BufferedImage(8 * SQUARE_SIZE, 8 * SQUARE_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = background.createGraphics();
+        for (int row = 0; row < 8; row++) {
+            for (int column = 0; column < 8; column++) {
+                // get square colour based on coordinate
+                g.setColor((row + column) % 2 == 0 ? DARK_SQUARE_COLOUR : LIGHT_SQUARE_COLOUR);
+                g.fillRect(column * SQUARE_SIZE, 7 * SQUARE_SIZE - row * SQUARE_SIZE, SQUARE_SIZE, SQUARE_SIZE);
+            }
+        }
+        g.dispose();
+
+        for (int i = 0; i < pieceImages.length; i++){
+            pieceImages[i] = new BufferedImage(SQUARE_SIZE, SQUARE_SIZE, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D pieceGraphics = pieceImages[i].createGraphics();
+            pieceGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            pieceGraphics.drawImage(Piece.fromBitboardIndex(i).getPieceImage(), 0, 0, SQUARE_SIZE, SQUARE_SIZE, null);
+            pieceGraphics.dispose();
+        }
+    }
+
     public void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        drawBoard(g);
-        drawPossibleMoves(g);
+        // the background covers the whole panel, so there's nothing to clear first
+        Rectangle clip = g.getClipBounds();
+        if (clip == null){
+            clip = new Rectangle(0, 0, 8 * SQUARE_SIZE, 8 * SQUARE_SIZE);
+        }
+        g.drawImage(background, 0, 0, null);
+        drawPieces(g, clip);
+        drawPossibleMoves(g, clip);
     }
 
-    private void drawBoard(Graphics g){
-        for (int row = 0; row < 8; row++) {
-            for (int column = 0; column < 8; column++) {
-                drawSquare(g, row, column );
+    // only the squares that overlap the area being repainted
+    private void drawPieces(Graphics g, Rectangle clip){
+        int firstColumn = Math.max(0, clip.x / SQUARE_SIZE);
+        int lastColumn = Math.min(7, (clip.x + clip.width - 1) / SQUARE_SIZE);
+        int firstRow = Math.max(0, 7 - (clip.y + clip.height - 1) / SQUARE_SIZE);
+        int lastRow = Math.min(7, 7 - clip.y / SQUARE_SIZE);
 
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
                 int squareIndex = row * 8 + column;
                 Optional<Piece> pieceOnSquare = board.getPieceFromSquareIndex(squareIndex);
 
                 if (pieceOnSquare.isPresent()){
-                    drawPiece(g, pieceOnSquare.get(), row, column);
+                    g.drawImage(pieceImages[pieceOnSquare.get().getBitboardIndex()], column * SQUARE_SIZE, 7 * SQUARE_SIZE - row * SQUARE_SIZE, null);
                 }
-
             }
         }
     }
 
-    private void drawSquare(Graphics g, int row, int column){
-        // get square colour based on coordinate
-        if ((row + column) % 2 == 0) {
-            g.setColor(new Color(160, 82, 45));
-        } else {
-            g.setColor(new Color(222, 184, 135));
-        }
+    private void repaintSquare(int squareIndex){
+        int row = squareIndex / 8;
+        int column = squareIndex % 8;
+        repaint(column * SQUARE_SIZE, 7 * SQUARE_SIZE - row * SQUARE_SIZE, SQUARE_SIZE, SQUARE_SIZE);
+    }
 
-        // draw square
-        g.fillRect(column * SQUARE_SIZE,7 * SQUARE_SIZE - row * SQUARE_SIZE,SQUARE_SIZE,SQUARE_SIZE);
+    private void repaintMove(Move move){
+        repaintSquare(move.getStartingSquare());
+        repaintSquare(move.getTargetSquare());
+
+        // castling also moves the rook, en passant takes a pawn off a square the capturing pawn doesn't land on
+        int encodedMove = move.getEncodedMove();
+        if (MoveUtils.isCastle(encodedMove)){
+            int rank = move.getTargetSquare() / 8 * 8;
+            boolean kingSide = MoveUtils.getFlags(encodedMove) == MoveUtils.KING_SIDE_CASTLE;
+            repaintSquare(rank + (kingSide ? 7 : 0));
+            repaintSquare(rank + (kingSide ? 5 : 3));
+        } else if (MoveUtils.isEnPassant(encodedMove)){
+            repaintSquare(MoveUtils.getEnPassantCaptureSquare(encodedMove));
+        }
     }
 
-    private void drawPiece(Graphics g, Piece piece, int row, int column){
-        g.drawImage(piece.getPieceImage(), column * SQUARE_SIZE,7 * SQUARE_SIZE - row * SQUARE_SIZE, SQUARE_SIZE, SQUARE_SIZE, this);
+    private void repaintPossibleMoves(){
+        for (Move possibleMove : possibleMoves){
+            repaintSquare(possibleMove.getTargetSquare());
+        }
     }
 
     private static int getSquareClicked(int x, int y){
@@ -135,15 +271,18 @@ class BoardGraphics extends JPanel {
         return possibleMoves;
     }
 
-    private void drawPossibleMoves(Graphics g){
-        int CIRCLE_SIZE = 20;
-        g.setColor(new Color(180, 180, 180, 255));
+    private void drawPossibleMoves(Graphics g, Rectangle clip){
+        g.setColor(POSSIBLE_MOVE_COLOUR);
         // for each squareIndex in possible moves
         // draw small circle?
         for (Move possibleMove : possibleMoves){
             int row = possibleMove.getTargetSquare() / 8;
             int column = possibleMove.getTargetSquare() % 8;
-            g.fillOval(column * SQUARE_SIZE  + 40, 7 * SQUARE_SIZE - row * SQUARE_SIZE + 40, CIRCLE_SIZE, CIRCLE_SIZE);
+            int x = column * SQUARE_SIZE + 40;
+            int y = 7 * SQUARE_SIZE - row * SQUARE_SIZE + 40;
+            if (clip.intersects(x, y, CIRCLE_SIZE, CIRCLE_SIZE)){
+                g.fillOval(x, y, CIRCLE_SIZE, CIRCLE_SIZE);
+            }
         }
     }
 }
@@ -0,0 +1,120 @@
+package main;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+// runs searches in the background so the caller (usually the swing event dispatch thread) never blocks.
+// each search works on a snapshot of the position, so the caller's board can keep being read and drawn,
+// and results and progress are handed back through a CompletableFuture and a listener
+public class EngineService implements AutoCloseable {
+    private final ExecutorService searchThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "engine-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // shared by every search of the service, so it keeps what it learnt between moves of a game
+    private final TranspositionTable transpositionTable;
+    private volatile int threadCount = 1;
+    private volatile PolyglotBook openingBook;
+    private volatile Tablebases tablebases;
+    private volatile Nnue network;
+    private volatile AnalysisCache analysisCache;
+    private volatile Set<SearchFeature> searchFeatures = EnumSet.allOf(SearchFeature.class);
+
+    public EngineService(){
+        this(new TranspositionTable(Board.DEFAULT_HASH_SIZE_MB));
+    }
+
+    public EngineService(TranspositionTable transpositionTable){
+        this.transpositionTable = transpositionTable;
+    }
+
+    public void setThreadCount(int threadCount){
+        if (threadCount < 1){
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        this.threadCount = threadCount;
+    }
+
+    // null for no book
+    public void setOpeningBook(PolyglotBook openingBook){
+        this.openingBook = openingBook;
+    }
+
+    // null for no tables
+    public void setTablebases(Tablebases tablebases){
+        this.tablebases = tablebases;
+    }
+
+    // null for the piece-square tables
+    public void setNetwork(Nnue network){
+        this.network = network;
+    }
+
+    // null for no cache
+    public void setAnalysisCache(AnalysisCache analysisCache){
+        this.analysisCache = analysisCache;
+    }
+
+    public void setSearchFeatures(Set<SearchFeature> searchFeatures){
+        // copyOf can't take an empty set that isn't an EnumSet
+        EnumSet<SearchFeature> copy = EnumSet.noneOf(SearchFeature.class);
+        copy.addAll(searchFeatures);
+        this.searchFeatures = copy;
+    }
+
+    public TranspositionTable getTranspositionTable(){
+        return transpositionTable;
+    }
+
+    // the position is copied straight away, on the calling thread, so it is free to change once this returns.
+    // the progress listener is called on the search thread after every completed iteration.
+    // cancelling the future stops the search and discards its result; searches are run one at a time,
+    // in the order they were asked for
+    public CompletableFuture<SearchResult> search(Board position, int maxDepth, long timeBudgetMillis, long nodeLimit,
+                                                  Consumer<SearchProgress> progressListener){
+        Board snapshot = new Board(position);
+        snapshot.setTranspositionTable(transpositionTable);
+        snapshot.setThreadCount(threadCount);
+        snapshot.setOpeningBook(openingBook);
+        snapshot.setTablebases(tablebases);
+        snapshot.setNetwork(network);
+        snapshot.setAnalysisCache(analysisCache);
+        snapshot.setSearchFeatures(searchFeatures);
+        snapshot.setSearchListener(progressListener);
+
+        CompletableFuture<SearchResult> future = new CompletableFuture<>();
+        future.whenComplete((result, exception) -> {
+            if (future.isCancelled()){
+                snapshot.stopSearch();
+            }
+        });
+
+        searchThread.execute(() -> {
+            // cancelled while waiting for an earlier search
+            if (future.isDone()){
+                return;
+            }
+            try {
+                future.complete(snapshot.search(maxDepth, timeBudgetMillis, nodeLimit));
+            } catch (RuntimeException | Error e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    public CompletableFuture<SearchResult> searchInTime(Board position, long timeBudgetMillis, Consumer<SearchProgress> progressListener){
+        return search(position, Board.MAX_PLY - 1, timeBudgetMillis, Board.NO_NODE_LIMIT, progressListener);
+    }
+
+    @Override
+    public void close(){
+        searchThread.shutdownNow();
+    }
+}
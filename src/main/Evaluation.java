@@ -0,0 +1,133 @@
+package main;
+
+public class Evaluation {
+    // piece values in centipawns, indexed by piece type ordinal (kings are never captured, so they're worth 0)
+    public static final int[] PIECE_VALUES = {100, 300, 350, 500, 900, 0};
+
+    // game phase: 24 with all minor and major pieces on the board, 0 with only kings and pawns left.
+    // the evaluation blends from the middlegame to the endgame tables as pieces come off
+    public static final int MAX_PHASE = 24;
+    public static final int[] PHASE_WEIGHTS = {0, 1, 1, 2, 4, 0};
+
+    // material + piece-square score of a piece on a square, indexed by bitboard index then square.
+    // positive for white pieces, negative for black ones, so a position's score is just the sum over its pieces
+    public static final int[][] MIDDLEGAME_SCORES = new int[12][64];
+    public static final int[][] ENDGAME_SCORES = new int[12][64];
+
+    // piece-square tables from white's point of view, laid out as seen from white's side:
+    // the first row is the eighth rank, the last row the first rank
+    private static final int[] PAWN_MIDDLEGAME = {
+              0,   0,   0,   0,   0,   0,   0,   0,
+             50,  50,  50,  50,  50,  50,  50,  50,
+             10,  10,  20,  30,  30,  20,  10,  10,
+              5,   5,  10,  25,  25,  10,   5,   5,
+              0,   0,   0,  20,  20,   0,   0,   0,
+              5,  -5, -10,   0,   0, -10,  -5,   5,
+              5,  10,  10, -20, -20,  10,  10,   5,
+              0,   0,   0,   0,   0,   0,   0,   0,
+    };
+
+    // in the endgame pawns are worth more the closer they get to promoting
+    private static final int[] PAWN_ENDGAME = {
+              0,   0,   0,   0,   0,   0,   0,   0,
+             80,  80,  80,  80,  80,  80,  80,  80,
+             50,  50,  50,  50,  50,  50,  50,  50,
+             30,  30,  30,  30,  30,  30,  30,  30,
+             20,  20,  20,  20,  20,  20,  20,  20,
+             10,  10,  10,  10,  10,  10,  10,  10,
+              0,   0,   0,   0,   0,   0,   0,   0,
+              0,   0,   0,   0,   0,   0,   0,   0,
+    };
+
+    private static final int[] KNIGHT = {
+            -50, -40, -30, -30, -30, -30, -40, -50,
+            -40, -20,   0,   0,   0,   0, -20, -40,
+            -30,   0,  10,  15,  15,  10,   0, -30,
+            -30,   5,  15,  20,  20,  15,   5, -30,
+            -30,   0,  15,  20,  20,  15,   0, -30,
+            -30,   5,  10,  15,  15,  10,   5, -30,
+            -40, -20,   0,   5,   5,   0, -20, -40,
+            -50, -40, -30, -30, -30, -30, -40, -50,
+    };
+
+    private static final int[] BISHOP = {
+            -20, -10, -10, -10, -10, -10, -10, -20,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -10,   0,   5,  10,  10,   5,   0, -10,
+            -10,   5,   5,  10,  10,   5,   5, -10,
+            -10,   0,  10,  10,  10,  10,   0, -10,
+            -10,  10,  10,  10,  10,  10,  10, -10,
+            -10,   5,   0,   0,   0,   0,   5, -10,
+            -20, -10, -10, -10, -10, -10, -10, -20,
+    };
+
+    private static final int[] ROOK = {
+              0,   0,   0,   0,   0,   0,   0,   0,
+              5,  10,  10,  10,  10,  10,  10,   5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+              0,   0,   0,   5,   5,   0,   0,   0,
+    };
+
+    private static final int[] QUEEN = {
+            -20, -10, -10,  -5,  -5, -10, -10, -20,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -10,   0,   5,   5,   5,   5,   0, -10,
+             -5,   0,   5,   5,   5,   5,   0,  -5,
+              0,   0,   5,   5,   5,   5,   0,  -5,
+            -10,   5,   5,   5,   5,   5,   0, -10,
+            -10,   0,   5,   0,   0,   0,   0, -10,
+            -20, -10, -10,  -5,  -5, -10, -10, -20,
+    };
+
+    // the king hides behind its pawns while there are pieces around, and walks to the centre in the endgame
+    private static final int[] KING_MIDDLEGAME = {
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -20, -30, -30, -40, -40, -30, -30, -20,
+            -10, -20, -20, -20, -20, -20, -20, -10,
+             20,  20,   0,   0,   0,   0,  20,  20,
+             20,  30,  10,   0,   0,  10,  30,  20,
+    };
+
+    private static final int[] KING_ENDGAME = {
+            -50, -40, -30, -20, -20, -30, -40, -50,
+            -30, -20, -10,   0,   0, -10, -20, -30,
+            -30, -10,  20,  30,  30,  20, -10, -30,
+            -30, -10,  30,  40,  40,  30, -10, -30,
+            -30, -10,  30,  40,  40,  30, -10, -30,
+            -30, -10,  20,  30,  30,  20, -10, -30,
+            -30, -30,   0,   0,   0,   0, -30, -30,
+            -50, -30, -30, -30, -30, -30, -30, -50,
+    };
+
+    static {
+        int[][] middlegameTables = {PAWN_MIDDLEGAME, KNIGHT, BISHOP, ROOK, QUEEN, KING_MIDDLEGAME};
+        int[][] endgameTables = {PAWN_ENDGAME, KNIGHT, BISHOP, ROOK, QUEEN, KING_ENDGAME};
+
+        for (int type = 0; type < 6; type++){
+            for (int square = 0; square < 64; square++){
+                // the tables start at the eighth rank, so white's square is flipped vertically to index them,
+                // black sees the board the other way round so its squares index the tables directly
+                int whiteIndex = square ^ 56;
+
+                MIDDLEGAME_SCORES[type * 2][square] = PIECE_VALUES[type] + middlegameTables[type][whiteIndex];
+                ENDGAME_SCORES[type * 2][square] = PIECE_VALUES[type] + endgameTables[type][whiteIndex];
+
+                MIDDLEGAME_SCORES[type * 2 + 1][square] = -(PIECE_VALUES[type] + middlegameTables[type][square]);
+                ENDGAME_SCORES[type * 2 + 1][square] = -(PIECE_VALUES[type] + endgameTables[type][square]);
+            }
+        }
+    }
+
+    // blend of the middlegame and endgame scores, weighted by how much material is left
+    public static int taper(int middlegameScore, int endgameScore, int phase){
+        int middlegamePhase = Math.min(phase, MAX_PHASE);
+        return (middlegameScore * middlegamePhase + endgameScore * (MAX_PHASE - middlegamePhase)) / MAX_PHASE;
+    }
+}
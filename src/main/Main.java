@@ -1,8 +1,20 @@
 package main;
 
+import java.io.IOException;
+
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        // headless mode for chess GUIs, tournament managers and servers without a display
+        if (args.length > 0 && args[0].equals("uci")){
+            SearchMonitor.registerWithJmx();
+            UciEngine.main(args);
+            return;
+        }
+
         BoardGraphics boardGraphics = new BoardGraphics();
         boardGraphics.start();
+
+        // the GUI is created on the event dispatch thread, meanwhile this thread can set up monitoring
+        SearchMonitor.registerWithJmx();
     }
 }
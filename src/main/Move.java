@@ -2,18 +2,27 @@ package main;
 
 import java.util.Optional;
 
+// boundary type for the GUI, the engine itself only works with moves packed into ints (see MoveUtils)
 public class Move {
+    private final int encodedMove;
     private final Piece pieceToMove;
     private final int startingSquare;
     private final int targetSquare;
     private final Optional<Piece> capturedPiece;
 
-    public Move(Piece pieceToMove, int startingSquare, int targetSquare, Optional<Piece> capturedPiece){
-        this.pieceToMove = pieceToMove;
-        this.startingSquare = startingSquare;
-        this.targetSquare = targetSquare;
+    public Move(int encodedMove){
+        this.encodedMove = encodedMove;
+        this.pieceToMove = Piece.fromBitboardIndex(MoveUtils.getMovingPiece(encodedMove));
+        this.startingSquare = MoveUtils.getStartingSquare(encodedMove);
+        this.targetSquare = MoveUtils.getTargetSquare(encodedMove);
 
-        this.capturedPiece = capturedPiece;
+        this.capturedPiece = MoveUtils.isCapture(encodedMove)
+                ? Optional.of(Piece.fromBitboardIndex(MoveUtils.getCapturedPiece(encodedMove)))
+                : Optional.empty();
+    }
+
+    public int getEncodedMove() {
+        return encodedMove;
     }
 
     public Piece getPieceToMove() {
@@ -32,6 +41,10 @@ public class Move {
         return capturedPiece;
     }
 
+    public String toUciString() {
+        return MoveUtils.toUciString(encodedMove);
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -0,0 +1,85 @@
+package main;
+
+public class MoveUtils {
+    // moves are packed into a single int so that move generation and search don't allocate:
+    // bits 0-5   -> starting square
+    // bits 6-11  -> target square
+    // bits 12-15 -> flags
+    // bits 16-19 -> bitboard index of the moving piece
+    // bits 20-23 -> bitboard index of the captured piece, NO_PIECE if the target square is empty
+    public static final int NO_MOVE = 0;
+    public static final int NO_PIECE = 12;
+
+    // flags for the moves that do more than take a piece from one square to another. promotions set bit 3,
+    // the other two bits give the piece promoted to, knight to queen
+    public static final int NO_FLAGS = 0;
+    public static final int DOUBLE_PAWN_PUSH = 1;
+    public static final int KING_SIDE_CASTLE = 2;
+    public static final int QUEEN_SIDE_CASTLE = 3;
+    public static final int EN_PASSANT = 4;
+    public static final int KNIGHT_PROMOTION = 8;
+    public static final int BISHOP_PROMOTION = 9;
+    public static final int ROOK_PROMOTION = 10;
+    public static final int QUEEN_PROMOTION = 11;
+
+    public static int encode(int startingSquare, int targetSquare, int movingPiece, int capturedPiece, int flags){
+        return startingSquare | (targetSquare << 6) | (flags << 12) | (movingPiece << 16) | (capturedPiece << 20);
+    }
+
+    public static int getStartingSquare(int move){
+        return move & 0x3f;
+    }
+
+    public static int getTargetSquare(int move){
+        return (move >>> 6) & 0x3f;
+    }
+
+    public static int getFlags(int move){
+        return (move >>> 12) & 0xf;
+    }
+
+    public static int getMovingPiece(int move){
+        return (move >>> 16) & 0xf;
+    }
+
+    public static int getCapturedPiece(int move){
+        return (move >>> 20) & 0xf;
+    }
+
+    public static boolean isCapture(int move){
+        return getCapturedPiece(move) != NO_PIECE;
+    }
+
+    public static boolean isPromotion(int move){
+        return (getFlags(move) & KNIGHT_PROMOTION) != 0;
+    }
+
+    public static boolean isCastle(int move){
+        int flags = getFlags(move);
+        return flags == KING_SIDE_CASTLE || flags == QUEEN_SIDE_CASTLE;
+    }
+
+    public static boolean isEnPassant(int move){
+        return getFlags(move) == EN_PASSANT;
+    }
+
+    // bitboard index of the piece a pawn promotes to, same colour as the pawn
+    public static int getPromotionPiece(int move){
+        int type = PieceType.Knight.ordinal() + (getFlags(move) & 3);
+        return type * 2 + getMovingPiece(move) % 2;
+    }
+
+    // square of the pawn taken en passant, behind the target square from the capturing pawn's point of view
+    public static int getEnPassantCaptureSquare(int move){
+        return getTargetSquare(move) + (getMovingPiece(move) % 2 == 0 ? -8 : 8);
+    }
+
+    private static final String PROMOTION_CHARACTERS = "nbrq";
+
+    // long algebraic notation used by UCI, e.g. e2e4 or e7e8q
+    public static String toUciString(int move){
+        String uciString = BoardUtils.getSquareNameFromIndex(getStartingSquare(move)).toLowerCase()
+                + BoardUtils.getSquareNameFromIndex(getTargetSquare(move)).toLowerCase();
+        return isPromotion(move) ? uciString + PROMOTION_CHARACTERS.charAt(getFlags(move) & 3) : uciString;
+    }
+}
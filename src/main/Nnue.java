@@ -0,0 +1,176 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// efficiently updatable neural network (NNUE) evaluation. the 768 inputs are one per piece (bitboard index) and
+// square, and feed a hidden layer that is computed twice, once from each colour's point of view (for black the
+// board is flipped and the colours swapped). those two hidden layers are the accumulators: a move only changes
+// 2 to 4 inputs, so the board keeps them up to date by adding and subtracting weight columns instead of
+// computing them again. the clipped hidden values of the colour to play, then of its opponent, feed one output.
+//
+// weights are quantised to 16 bit integers: the hidden layer is scaled by QA and the output weights by QB.
+// the file is little endian: int magic ("NNUE"), int hidden size, short feature weights [768][hidden size],
+// short feature biases [hidden size], short output weights [2 * hidden size], int output bias
+public class Nnue {
+    public static final int INPUTS = 768;
+    static final int QA = 255;
+    static final int QB = 64;
+    // the network's output is in units of SCALE centipawns
+    static final int SCALE = 400;
+    private static final int MAGIC = 0x45554e4e;
+
+    // the vector kernels need the incubating vector module (--add-modules jdk.incubator.vector), without it, or
+    // with -Dnnue.scalar=true, the scalar loops are used. both give exactly the same results
+    static final boolean VECTORISED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && !Boolean.getBoolean("nnue.scalar");
+
+    private final int hiddenSize;
+    // input major, so the column added for one input is contiguous
+    private final short[] featureWeights;
+    private final short[] featureBiases;
+    private final short[] outputWeights;
+    private final int outputBias;
+
+    public Nnue(int hiddenSize, short[] featureWeights, short[] featureBiases, short[] outputWeights, int outputBias){
+        if (hiddenSize <= 0 || featureWeights.length != INPUTS * hiddenSize || featureBiases.length != hiddenSize
+                || outputWeights.length != 2 * hiddenSize){
+            throw new IllegalArgumentException("Network weights don't match a hidden layer of " + hiddenSize);
+        }
+        this.hiddenSize = hiddenSize;
+        this.featureWeights = featureWeights;
+        this.featureBiases = featureBiases;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+    }
+
+    public static Nnue load(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < 8 || buffer.getInt() != MAGIC){
+            throw new IOException("Not a network file: " + file);
+        }
+        int hiddenSize = buffer.getInt();
+        long expectedBytes = 8 + 2L * (INPUTS + 3) * hiddenSize + 4;
+        if (hiddenSize <= 0 || buffer.capacity() != expectedBytes){
+            throw new IOException("Network file " + file + " should have " + expectedBytes + " bytes for a hidden layer of "
+                    + hiddenSize + ", not " + buffer.capacity());
+        }
+
+        short[] featureWeights = new short[INPUTS * hiddenSize];
+        short[] featureBiases = new short[hiddenSize];
+        short[] outputWeights = new short[2 * hiddenSize];
+        buffer.asShortBuffer().get(featureWeights);
+        buffer.position(buffer.position() + 2 * featureWeights.length);
+        buffer.asShortBuffer().get(featureBiases);
+        buffer.position(buffer.position() + 2 * featureBiases.length);
+        buffer.asShortBuffer().get(outputWeights);
+        buffer.position(buffer.position() + 2 * outputWeights.length);
+        return new Nnue(hiddenSize, featureWeights, featureBiases, outputWeights, buffer.getInt());
+    }
+
+    public void save(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 2 * (INPUTS + 3) * hiddenSize + 4).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(hiddenSize);
+        buffer.asShortBuffer().put(featureWeights).put(featureBiases).put(outputWeights);
+        buffer.position(buffer.position() + 2 * (INPUTS + 3) * hiddenSize);
+        buffer.putInt(outputBias);
+        Files.write(file, buffer.array());
+    }
+
+    public int getHiddenSize(){
+        return hiddenSize;
+    }
+
+    // one accumulator per colour, indexed by colour ordinal
+    short[][] createAccumulators(){
+        return new short[2][hiddenSize];
+    }
+
+    // computes both accumulators from scratch, from a mailbox of bitboard indexes
+    void refresh(short[][] accumulators, byte[] mailbox){
+        for (int colour = 0; colour < 2; colour++){
+            System.arraycopy(featureBiases, 0, accumulators[colour], 0, hiddenSize);
+        }
+        for (int square = 0; square < 64; square++){
+            if (mailbox[square] != MoveUtils.NO_PIECE){
+                addPiece(accumulators, mailbox[square], square);
+            }
+        }
+    }
+
+    // black sees the board flipped, with its own pieces as the first colour
+    private int getColumn(int colour, int bitboardIndex, int square){
+        int input = colour == 0 ? bitboardIndex * 64 + square : (bitboardIndex ^ 1) * 64 + (square ^ 56);
+        return input * hiddenSize;
+    }
+
+    void addPiece(short[][] accumulators, int bitboardIndex, int square){
+        for (int colour = 0; colour < 2; colour++){
+            int column = getColumn(colour, bitboardIndex, square);
+            if (VECTORISED){
+                NnueVectorKernels.add(accumulators[colour], featureWeights, column);
+            } else {
+                short[] accumulator = accumulators[colour];
+                for (int i = 0; i < hiddenSize; i++){
+                    accumulator[i] += featureWeights[column + i];
+                }
+            }
+        }
+    }
+
+    void removePiece(short[][] accumulators, int bitboardIndex, int square){
+        for (int colour = 0; colour < 2; colour++){
+            int column = getColumn(colour, bitboardIndex, square);
+            if (VECTORISED){
+                NnueVectorKernels.subtract(accumulators[colour], featureWeights, column);
+            } else {
+                short[] accumulator = accumulators[colour];
+                for (int i = 0; i < hiddenSize; i++){
+                    accumulator[i] -= featureWeights[column + i];
+                }
+            }
+        }
+    }
+
+    // a piece leaving one square and a (possibly different, when promoting) piece arriving on another, in one pass
+    void movePiece(short[][] accumulators, int fromBitboardIndex, int fromSquare, int toBitboardIndex, int toSquare){
+        for (int colour = 0; colour < 2; colour++){
+            int addedColumn = getColumn(colour, toBitboardIndex, toSquare);
+            int removedColumn = getColumn(colour, fromBitboardIndex, fromSquare);
+            if (VECTORISED){
+                NnueVectorKernels.addSubtract(accumulators[colour], featureWeights, addedColumn, removedColumn);
+            } else {
+                short[] accumulator = accumulators[colour];
+                for (int i = 0; i < hiddenSize; i++){
+                    accumulator[i] = (short) (accumulator[i] + featureWeights[addedColumn + i] - featureWeights[removedColumn + i]);
+                }
+            }
+        }
+    }
+
+    // score in centipawns from the point of view of the colour to play
+    int evaluate(short[][] accumulators, int colourToPlay){
+        long output = outputBias;
+        if (VECTORISED){
+            output += NnueVectorKernels.clippedDotProduct(accumulators[colourToPlay], outputWeights, 0, QA);
+            output += NnueVectorKernels.clippedDotProduct(accumulators[colourToPlay ^ 1], outputWeights, hiddenSize, QA);
+        } else {
+            output += clippedDotProduct(accumulators[colourToPlay], 0);
+            output += clippedDotProduct(accumulators[colourToPlay ^ 1], hiddenSize);
+        }
+        return (int) (output * SCALE / (QA * QB));
+    }
+
+    // hidden values clipped to 0..QA (clipped relu), times the output weights
+    private int clippedDotProduct(short[] accumulator, int weightOffset){
+        int sum = 0;
+        for (int i = 0; i < hiddenSize; i++){
+            int value = Math.max(0, Math.min(QA, accumulator[i]));
+            sum += value * outputWeights[weightOffset + i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,75 @@
+package main;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// SIMD versions of the network's inner loops, using as many 16 bit lanes as the CPU has (16 with AVX2, 32 with
+// AVX-512). only loaded when the vector module is there (see Nnue.VECTORISED). the lanes that don't fill a
+// whole vector are done one at a time
+final class NnueVectorKernels {
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+    // same width as SHORTS, so each short vector widens into two int vectors
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    private NnueVectorKernels(){
+    }
+
+    static void add(short[] accumulator, short[] weights, int offset){
+        int i = 0;
+        for (int bound = SHORTS.loopBound(accumulator.length); i < bound; i += SHORTS.length()){
+            ShortVector.fromArray(SHORTS, accumulator, i)
+                    .add(ShortVector.fromArray(SHORTS, weights, offset + i))
+                    .intoArray(accumulator, i);
+        }
+        for (; i < accumulator.length; i++){
+            accumulator[i] += weights[offset + i];
+        }
+    }
+
+    static void subtract(short[] accumulator, short[] weights, int offset){
+        int i = 0;
+        for (int bound = SHORTS.loopBound(accumulator.length); i < bound; i += SHORTS.length()){
+            ShortVector.fromArray(SHORTS, accumulator, i)
+                    .sub(ShortVector.fromArray(SHORTS, weights, offset + i))
+                    .intoArray(accumulator, i);
+        }
+        for (; i < accumulator.length; i++){
+            accumulator[i] -= weights[offset + i];
+        }
+    }
+
+    static void addSubtract(short[] accumulator, short[] weights, int addedOffset, int removedOffset){
+        int i = 0;
+        for (int bound = SHORTS.loopBound(accumulator.length); i < bound; i += SHORTS.length()){
+            ShortVector.fromArray(SHORTS, accumulator, i)
+                    .add(ShortVector.fromArray(SHORTS, weights, addedOffset + i))
+                    .sub(ShortVector.fromArray(SHORTS, weights, removedOffset + i))
+                    .intoArray(accumulator, i);
+        }
+        for (; i < accumulator.length; i++){
+            accumulator[i] = (short) (accumulator[i] + weights[addedOffset + i] - weights[removedOffset + i]);
+        }
+    }
+
+    // sum of clamp(accumulator[i], 0, max) * weights[offset + i], products are widened to ints before adding up
+    static int clippedDotProduct(short[] accumulator, short[] weights, int offset, int max){
+        IntVector sums = IntVector.zero(INTS);
+        int i = 0;
+        for (int bound = SHORTS.loopBound(accumulator.length); i < bound; i += SHORTS.length()){
+            ShortVector values = ShortVector.fromArray(SHORTS, accumulator, i).max((short) 0).min((short) max);
+            ShortVector weightVector = ShortVector.fromArray(SHORTS, weights, offset + i);
+            for (int part = 0; part < 2; part++){
+                IntVector wideValues = (IntVector) values.convertShape(VectorOperators.S2I, INTS, part);
+                IntVector wideWeights = (IntVector) weightVector.convertShape(VectorOperators.S2I, INTS, part);
+                sums = sums.add(wideValues.mul(wideWeights));
+            }
+        }
+        int sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < accumulator.length; i++){
+            sum += Math.max(0, Math.min(max, accumulator[i])) * weights[offset + i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,72 @@
+package main;
+
+import java.util.Arrays;
+
+public class Perft {
+    // counts the move sequences of each length from well known positions and compares them with the published
+    // numbers, which checks castling, en passant, promotions, pins and checks in the move generator at once.
+    // usage: Perft                      -> every reference position, exits with 1 on a wrong count
+    //        Perft <depth> <fen>        -> the count for each legal move of the position (divide)
+    private static final String[] POSITIONS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+    };
+
+    // counts for depth 1, 2, ...
+    private static final long[][] COUNTS = {
+            {20, 400, 8_902, 197_281, 4_865_609},
+            {48, 2_039, 97_862, 4_085_603},
+            {14, 191, 2_812, 43_238, 674_624, 11_030_083},
+            {6, 264, 9_467, 422_333, 15_833_292},
+            {44, 1_486, 62_379, 2_103_487},
+            {46, 2_079, 89_890, 3_894_594},
+    };
+
+    public static void main(String[] args) {
+        if (args.length >= 2){
+            divide(Board.fromFen(String.join(" ", Arrays.copyOfRange(args, 1, args.length))), Integer.parseInt(args[0]));
+            return;
+        }
+
+        boolean allCorrect = true;
+        long totalNodes = 0;
+        long startNanos = System.nanoTime();
+
+        for (int i = 0; i < POSITIONS.length; i++){
+            Board board = Board.fromFen(POSITIONS[i]);
+            for (int depth = 1; depth <= COUNTS[i].length; depth++){
+                long nodes = board.perft(depth);
+                totalNodes += nodes;
+
+                boolean correct = nodes == COUNTS[i][depth - 1];
+                allCorrect &= correct;
+                System.out.printf("%s depth %d: %,d%s%n", POSITIONS[i], depth, nodes,
+                        correct ? "" : " expected " + String.format("%,d", COUNTS[i][depth - 1]));
+            }
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        System.out.printf("%,d nodes in %dms, %,d nodes/s%n", totalNodes, elapsedNanos / 1_000_000,
+                totalNodes * 1_000_000_000L / Math.max(elapsedNanos, 1));
+        if (!allCorrect){
+            System.exit(1);
+        }
+    }
+
+    private static void divide(Board board, int depth){
+        long totalNodes = 0;
+        for (Move move : board.getLegalMoves()){
+            board.playMove(move);
+            long nodes = depth > 1 ? board.perft(depth - 1) : 1;
+            board.undoLastMove();
+
+            totalNodes += nodes;
+            System.out.println(move.toUciString() + ": " + nodes);
+        }
+        System.out.println("total: " + totalNodes);
+    }
+}
@@ -7,7 +7,16 @@ public class Piece {
     private final Colour colour;
     private final PieceType type;
 
-    public Piece(Colour colour, PieceType type){
+    // pieces are immutable, so one shared instance per bitboard index is enough
+    private static final Piece[] PIECES = new Piece[12];
+
+    static {
+        for (int i = 0; i < PIECES.length; i++){
+            PIECES[i] = new Piece(Colour.values()[i % 2], PieceType.values()[i / 2]);
+        }
+    }
+
+    private Piece(Colour colour, PieceType type){
         this.colour = colour;
         this.type = type;
     }
@@ -20,11 +29,21 @@ public class Piece {
         return type;
     }
 
+    // bitboards are ordered white pawns, black pawns, white knights, ..., black king
+    public int getBitboardIndex(){
+        return type.ordinal() * 2 + colour.ordinal();
+    }
+
+    public static Piece fromBitboardIndex(int bitboardIndex){
+        return PIECES[bitboardIndex];
+    }
+
     @Override
     public String toString(){
         return colour.toString() + " " +  type.toString();
     }
 
+    // read from disk on every call, BoardGraphics keeps its own scaled copies
     public Image getPieceImage(){
         String name = this.colour.toString().toLowerCase() + "-" + this.type.toString().toLowerCase();
         return new ImageIcon("src/img/" + name + ".png").getImage();
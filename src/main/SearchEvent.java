@@ -0,0 +1,44 @@
+package main;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// committed once per search, shows up in JDK Flight Recorder recordings with the search's duration
+@Name("main.Search")
+@Label("Search")
+@Category("Chess Engine")
+@Description("A search for the best move in a position")
+class SearchEvent extends Event {
+    @Label("Colour To Play")
+    String colourToPlay;
+
+    @Label("Best Move")
+    String bestMove;
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Threads")
+    int threads;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Leaf Nodes")
+    long leafNodes;
+
+    @Label("Quiescence Nodes")
+    long quiescenceNodes;
+
+    @Label("Nodes Per Second")
+    long nodesPerSecond;
+
+    @Label("First Move Cutoff Ratio")
+    double firstMoveCutoffRatio;
+
+    @Label("Transposition Hit Rate")
+    double transpositionHitRate;
+}
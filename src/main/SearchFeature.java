@@ -0,0 +1,15 @@
+package main;
+
+// selective parts of the search that can be switched off one at a time, to measure what each of them is worth
+public enum SearchFeature {
+    // moves after the first are searched with a zero window, and only searched again if they turn out better
+    PrincipalVariationSearch,
+    // passing the move and still failing high means the position is good enough to cut without searching it fully
+    NullMovePruning,
+    // quiet moves late in the ordering are searched less deeply, unless they turn out better than expected
+    LateMoveReductions,
+    // quiet moves that caused a cutoff at the same ply elsewhere in the tree are tried right after the captures
+    KillerMoves,
+    // the other quiet moves are ordered by how often they caused cutoffs so far
+    HistoryHeuristic,
+}
@@ -0,0 +1,96 @@
+package main;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+public class SearchMonitor implements SearchMonitorMBean {
+    // one monitor for the whole process, every completed search reports to it
+    public static final SearchMonitor INSTANCE = new SearchMonitor();
+    private static boolean registered;
+
+    // starting the platform MBean server takes a few hundred ms, so it's done once at startup rather than
+    // on the first search
+    public static synchronized void registerWithJmx(){
+        if (registered){
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName("main:type=SearchMonitor"));
+            registered = true;
+        } catch (JMException e) {
+            // monitoring is optional, the engine works the same without it
+            System.err.println("Could not register search monitor with JMX: " + e.getMessage());
+        }
+    }
+
+    private long searchCount;
+    private long totalNodes;
+    private long maxElapsedMillis;
+    private volatile SearchStatistics lastStatistics = new SearchStatistics();
+
+    private SearchMonitor(){
+    }
+
+    public synchronized void record(SearchStatistics statistics){
+        searchCount++;
+        totalNodes += statistics.getNodes();
+        maxElapsedMillis = Math.max(maxElapsedMillis, statistics.getElapsedMillis());
+        lastStatistics = statistics;
+    }
+
+    @Override
+    public synchronized long getSearchCount() {
+        return searchCount;
+    }
+
+    @Override
+    public synchronized long getTotalNodes() {
+        return totalNodes;
+    }
+
+    @Override
+    public long getLastNodes() {
+        return lastStatistics.getNodes();
+    }
+
+    @Override
+    public long getLastQuiescenceNodes() {
+        return lastStatistics.getQuiescenceNodes();
+    }
+
+    @Override
+    public long getLastNodesPerSecond() {
+        return lastStatistics.getNodesPerSecond();
+    }
+
+    @Override
+    public long getLastElapsedMillis() {
+        return lastStatistics.getElapsedMillis();
+    }
+
+    @Override
+    public int getLastDepth() {
+        return lastStatistics.getCompletedDepth();
+    }
+
+    @Override
+    public double getLastBranchingFactor() {
+        return lastStatistics.getBranchingFactor(lastStatistics.getCompletedDepth());
+    }
+
+    @Override
+    public double getLastFirstMoveCutoffRatio() {
+        return lastStatistics.getFirstMoveCutoffRatio();
+    }
+
+    @Override
+    public double getLastTranspositionHitRate() {
+        return lastStatistics.getTranspositionHitRate();
+    }
+
+    @Override
+    public synchronized long getMaxElapsedMillis() {
+        return maxElapsedMillis;
+    }
+}
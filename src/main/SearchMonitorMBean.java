@@ -0,0 +1,26 @@
+package main;
+
+// attributes shown by JMX clients (jconsole, VisualVM...) under main:type=SearchMonitor
+public interface SearchMonitorMBean {
+    long getSearchCount();
+
+    long getTotalNodes();
+
+    long getLastNodes();
+
+    long getLastQuiescenceNodes();
+
+    long getLastNodesPerSecond();
+
+    long getLastElapsedMillis();
+
+    int getLastDepth();
+
+    double getLastBranchingFactor();
+
+    double getLastFirstMoveCutoffRatio();
+
+    double getLastTranspositionHitRate();
+
+    long getMaxElapsedMillis();
+}
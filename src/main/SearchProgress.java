@@ -0,0 +1,51 @@
+package main;
+
+import java.util.List;
+
+// reported to the search listener every time an iteration of the search completes
+public class SearchProgress {
+    private final int depth;
+    private final int evaluation;
+    private final long nodes;
+    private final long elapsedMillis;
+    private final List<Move> principalVariation;
+
+    public SearchProgress(int depth, int evaluation, long nodes, long elapsedMillis, List<Move> principalVariation){
+        this.depth = depth;
+        this.evaluation = evaluation;
+        this.nodes = nodes;
+        this.elapsedMillis = elapsedMillis;
+        this.principalVariation = principalVariation;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    // in centipawns from white's point of view, like Board.evaluatePosition
+    public int getEvaluation() {
+        return evaluation;
+    }
+
+    // nodes searched by the main thread so far
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public long getNodesPerSecond() {
+        return elapsedMillis == 0 ? 0 : nodes * 1000 / elapsedMillis;
+    }
+
+    // the expected line of play, starting with the best move
+    public List<Move> getPrincipalVariation() {
+        return principalVariation;
+    }
+
+    public Move getBestMove() {
+        return principalVariation.isEmpty() ? null : principalVariation.getFirst();
+    }
+}
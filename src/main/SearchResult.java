@@ -0,0 +1,36 @@
+package main;
+
+public class SearchResult {
+    private final Move bestMove;
+    private final int evaluation;
+    private final SearchStatistics statistics;
+
+    public SearchResult(Move bestMove, int evaluation, SearchStatistics statistics){
+        this.bestMove = bestMove;
+        this.evaluation = evaluation;
+        this.statistics = statistics;
+    }
+
+    // null if there was no move to play
+    public Move getBestMove() {
+        return bestMove;
+    }
+
+    // in centipawns from white's point of view, like Board.evaluatePosition
+    public int getEvaluation() {
+        return evaluation;
+    }
+
+    public int getDepth() {
+        return statistics.getCompletedDepth();
+    }
+
+    public SearchStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public String toString() {
+        return "Best eval: " + evaluation + " with move: " + bestMove + " (" + statistics + ")";
+    }
+}
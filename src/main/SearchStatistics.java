@@ -0,0 +1,137 @@
+package main;
+
+public class SearchStatistics {
+    // counters are updated directly by the searching board, so they're package-private fields
+    long nodes;
+    long leafNodes;
+    long quiescenceNodes;
+    long betaCutoffs;
+    long firstMoveBetaCutoffs;
+    long transpositionProbes;
+    long transpositionHits;
+    long tablebaseHits;
+    long nullMoveCutoffs;
+    long lateMoveReductions;
+    long reSearches;
+    long elapsedNanos;
+    int completedDepth;
+
+    // nodes and time of each completed iteration of the main thread, indexed by depth
+    final long[] iterationNodes = new long[Board.MAX_PLY];
+    final long[] iterationNanos = new long[Board.MAX_PLY];
+
+    // helper threads only contribute to the counters, the iterations reported are the main thread's
+    void addCounters(SearchStatistics other){
+        nodes += other.nodes;
+        leafNodes += other.leafNodes;
+        quiescenceNodes += other.quiescenceNodes;
+        betaCutoffs += other.betaCutoffs;
+        firstMoveBetaCutoffs += other.firstMoveBetaCutoffs;
+        transpositionProbes += other.transpositionProbes;
+        transpositionHits += other.transpositionHits;
+        tablebaseHits += other.tablebaseHits;
+        nullMoveCutoffs += other.nullMoveCutoffs;
+        lateMoveReductions += other.lateMoveReductions;
+        reSearches += other.reSearches;
+    }
+
+    public long getTablebaseHits() {
+        return tablebaseHits;
+    }
+
+    public long getNullMoveCutoffs() {
+        return nullMoveCutoffs;
+    }
+
+    public long getLateMoveReductions() {
+        return lateMoveReductions;
+    }
+
+    // zero window or reduced searches that had to be repeated with a full window or depth
+    public long getReSearches() {
+        return reSearches;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getLeafNodes() {
+        return leafNodes;
+    }
+
+    // nodes searched past the horizon, these are included in getNodes
+    public long getQuiescenceNodes() {
+        return quiescenceNodes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    public long getNodesPerSecond() {
+        return elapsedNanos == 0 ? 0 : nodes * 1_000_000_000 / elapsedNanos;
+    }
+
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    public long getBetaCutoffs() {
+        return betaCutoffs;
+    }
+
+    // how often the first move searched was good enough for a cutoff, the closer to 1 the better the ordering
+    public double getFirstMoveCutoffRatio() {
+        return betaCutoffs == 0 ? 0 : (double) firstMoveBetaCutoffs / betaCutoffs;
+    }
+
+    public long getTranspositionProbes() {
+        return transpositionProbes;
+    }
+
+    public double getTranspositionHitRate() {
+        return transpositionProbes == 0 ? 0 : (double) transpositionHits / transpositionProbes;
+    }
+
+    public long getIterationNodes(int depth) {
+        return iterationNodes[depth];
+    }
+
+    public long getIterationMillis(int depth) {
+        return iterationNanos[depth] / 1_000_000;
+    }
+
+    // effective branching factor: how many times more nodes this depth needed than the one before
+    public double getBranchingFactor(int depth) {
+        if (depth < 2 || depth > completedDepth || iterationNodes[depth - 1] == 0){
+            return 0;
+        }
+        return (double) iterationNodes[depth] / iterationNodes[depth - 1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("depth ").append(completedDepth)
+                .append(", ").append(nodes).append(" nodes (").append(leafNodes).append(" leaves, ")
+                .append(quiescenceNodes).append(" quiescence)")
+                .append(", ").append(getElapsedMillis()).append("ms")
+                .append(", ").append(getNodesPerSecond()).append(" nps")
+                .append(String.format(", first move cutoffs %.1f%%", getFirstMoveCutoffRatio() * 100))
+                .append(String.format(", tt hits %.1f%%", getTranspositionHitRate() * 100));
+
+        if (tablebaseHits > 0){
+            sb.append(", tablebase hits ").append(tablebaseHits);
+        }
+        if (nullMoveCutoffs > 0 || lateMoveReductions > 0 || reSearches > 0){
+            sb.append(", null move cutoffs ").append(nullMoveCutoffs)
+                    .append(", reductions ").append(lateMoveReductions)
+                    .append(", re-searches ").append(reSearches);
+        }
+        if (completedDepth >= 2){
+            sb.append(String.format(", branching factor %.2f", getBranchingFactor(completedDepth)));
+        }
+        return sb.toString();
+    }
+}
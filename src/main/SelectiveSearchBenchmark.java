@@ -0,0 +1,47 @@
+package main;
+
+import java.util.EnumSet;
+
+public class SelectiveSearchBenchmark {
+    // measures what each selective search feature is worth: nodes, time and branching factor to a fixed depth on a
+    // few positions, with every feature on, each one switched off in turn and all of them off
+    // usage: SelectiveSearchBenchmark [depth]
+    private static final String[] POSITIONS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+    };
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+
+        run("all features", EnumSet.allOf(SearchFeature.class), depth);
+        for (SearchFeature feature : SearchFeature.values()){
+            EnumSet<SearchFeature> features = EnumSet.allOf(SearchFeature.class);
+            features.remove(feature);
+            run("without " + feature, features, depth);
+        }
+        run("no features", EnumSet.noneOf(SearchFeature.class), depth);
+    }
+
+    private static void run(String name, EnumSet<SearchFeature> features, int depth){
+        long totalNodes = 0;
+        long totalMillis = 0;
+        double branchingFactors = 0;
+
+        for (String fen : POSITIONS){
+            // fresh board and transposition table, so no run benefits from an earlier one
+            Board board = Board.fromFen(fen);
+            board.setSearchFeatures(features);
+
+            SearchStatistics statistics = board.search(depth, Board.NO_TIME_LIMIT, Board.NO_NODE_LIMIT).getStatistics();
+            totalNodes += statistics.getNodes();
+            totalMillis += statistics.getElapsedMillis();
+            branchingFactors += statistics.getBranchingFactor(depth);
+        }
+
+        System.out.printf("%-40s depth %d: %,12d nodes %6dms, branching factor %.2f%n",
+                name, depth, totalNodes, totalMillis, branchingFactors / POSITIONS.length);
+    }
+}
@@ -0,0 +1,412 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// plays two engine configurations, a (the candidate) and b (the baseline), against each other to find out whether
+// a change gains or loses strength. games run concurrently on a fixed pool of workers, one game per worker, each
+// worker with its own boards and transposition tables. every opening is played twice with the colours swapped so
+// that unbalanced openings cancel out. results are printed as games finish, with the elo difference of a over b
+// and a sequential probability ratio test (SPRT) of elo0 against elo1, which stops the match once it is decided.
+// usage: SelfPlayTournament <openings> [a <config>] [b <config>] [games <n>] [threads <n>] [nodes <n>]
+//        [movetime <ms>] [depth <n>] [hash <mb>] [elo0 <elo>] [elo1 <elo>] [alpha <p>] [beta <p>]
+// a config is a comma separated list of changes to the default engine: -Feature or +Feature switches one of the
+// SearchFeatures off or on, eval=<file> evaluates with a network. e.g. a "-LateMoveReductions" b ""
+public class SelfPlayTournament {
+    // games that go on this long are called a draw, they are almost always a shuffle that would end in one
+    private static final int MAX_GAME_PLIES = 600;
+
+    // game results in half points for white
+    private static final int WHITE_WINS = 2;
+    private static final int DRAW = 1;
+    private static final int BLACK_WINS = 0;
+
+    private final EngineConfig engineA;
+    private final EngineConfig engineB;
+    private final List<String> openings;
+    private final int threadCount;
+    private final int depth;
+    private final long moveTime;
+    private final long nodes;
+    private final int hashSizeMb;
+    private final Sprt sprt;
+
+    // only touched by the thread running the tournament
+    private int wins;
+    private int draws;
+    private int losses;
+
+    public SelfPlayTournament(EngineConfig engineA, EngineConfig engineB, List<String> openings, int threadCount,
+                              int depth, long moveTime, long nodes, int hashSizeMb, Sprt sprt){
+        if (threadCount < 1){
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        if (openings.isEmpty()){
+            throw new IllegalArgumentException("No opening positions");
+        }
+        this.engineA = engineA;
+        this.engineB = engineB;
+        this.openings = openings;
+        this.threadCount = threadCount;
+        this.depth = depth;
+        this.moveTime = moveTime;
+        this.nodes = nodes;
+        this.hashSizeMb = hashSizeMb;
+        this.sprt = sprt;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1){
+            System.err.println("usage: SelfPlayTournament <openings> [a <config>] [b <config>] [games <n>] [threads <n>] [nodes <n>]");
+            System.err.println("       [movetime <ms>] [depth <n>] [hash <mb>] [elo0 <elo>] [elo1 <elo>] [alpha <p>] [beta <p>]");
+            System.exit(1);
+        }
+
+        String configA = "";
+        String configB = "";
+        int games = 10_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int depth = Board.MAX_PLY - 1;
+        long moveTime = Board.NO_TIME_LIMIT;
+        long nodes = Board.NO_NODE_LIMIT;
+        int hashSizeMb = 4;
+        double elo0 = 0;
+        double elo1 = 5;
+        double alpha = 0.05;
+        double beta = 0.05;
+        for (int i = 1; i + 1 < args.length; i += 2){
+            switch (args[i]){
+                case "a" -> configA = args[i + 1];
+                case "b" -> configB = args[i + 1];
+                case "games" -> games = Integer.parseInt(args[i + 1]);
+                case "threads" -> threads = Integer.parseInt(args[i + 1]);
+                case "nodes" -> nodes = Long.parseLong(args[i + 1]);
+                case "movetime" -> moveTime = Long.parseLong(args[i + 1]);
+                case "depth" -> depth = Math.max(1, Math.min(Board.MAX_PLY - 1, Integer.parseInt(args[i + 1])));
+                case "hash" -> hashSizeMb = Integer.parseInt(args[i + 1]);
+                case "elo0" -> elo0 = Double.parseDouble(args[i + 1]);
+                case "elo1" -> elo1 = Double.parseDouble(args[i + 1]);
+                case "alpha" -> alpha = Double.parseDouble(args[i + 1]);
+                case "beta" -> beta = Double.parseDouble(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        // fixed nodes by default: games are fast, and the result doesn't depend on the load of the machine
+        if (depth == Board.MAX_PLY - 1 && moveTime == Board.NO_TIME_LIMIT && nodes == Board.NO_NODE_LIMIT){
+            nodes = 20_000;
+        }
+
+        SelfPlayTournament tournament = new SelfPlayTournament(EngineConfig.parse(configA), EngineConfig.parse(configB),
+                readOpenings(Path.of(args[0])), threads, depth, moveTime, nodes, hashSizeMb, new Sprt(elo0, elo1, alpha, beta));
+        tournament.run(games);
+    }
+
+    // one position per line, FEN or EPD (whose operations are ignored). every opening is checked here, a bad one
+    // found in the middle of the match would stop it and lose the games played so far
+    static List<String> readOpenings(Path file) throws IOException {
+        List<String> openings = new ArrayList<>();
+        try (BufferedReader lines = Files.newBufferedReader(file)){
+            String line;
+            for (int lineNumber = 1; (line = lines.readLine()) != null; lineNumber++){
+                if (line.isBlank() || line.startsWith("#")){
+                    continue;
+                }
+                String[] fields = line.trim().split("\\s+", 5);
+                String opening = String.join(" ", Arrays.copyOf(fields, Math.min(fields.length, 4)));
+                try {
+                    // loadFen rejects positions the engine can't play from, e.g. without both kings
+                    if (Board.fromFen(opening).getLegalMoves().isEmpty()){
+                        throw new IllegalArgumentException("The game is already over: " + opening);
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(file + " line " + lineNumber + ": " + e.getMessage(), e);
+                }
+                openings.add(opening);
+            }
+        }
+        return openings;
+    }
+
+    // plays up to gameCount games, or until the SPRT is decided, printing every result as it comes in
+    public void run(int gameCount) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "tournament-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // each worker reuses its two engines from one game to the next
+        ThreadLocal<Board[]> engines = ThreadLocal.withInitial(() -> new Board[]{engineA.createBoard(hashSizeMb), engineB.createBoard(hashSizeMb)});
+        CompletionService<Game> finishedGames = new ExecutorCompletionService<>(workers);
+
+        System.out.println("a: " + engineA + ", b: " + engineB + ", " + openings.size() + " openings, " + threadCount + " threads, "
+                + (nodes != Board.NO_NODE_LIMIT ? nodes + " nodes" : moveTime != Board.NO_TIME_LIMIT ? moveTime + "ms" : "depth " + depth) + " per move");
+
+        // games are queued in order, so both games of an opening finish close together
+        for (int i = 0; i < gameCount; i++){
+            int gameNumber = i;
+            finishedGames.submit(() -> play(engines.get(), gameNumber));
+        }
+
+        long startNanos = System.nanoTime();
+        int played = 0;
+        try {
+            while (played < gameCount){
+                Game game = finishedGames.take().get();
+                played++;
+                record(game);
+                System.out.printf("game %d (%d/%d): %s %s %s, %s, %d plies | %s%n", game.number + 1, played, gameCount,
+                        game.aIsWhite ? "a" : "b", getResultString(game.result), game.aIsWhite ? "b" : "a", game.reason, game.plies, getSummary());
+
+                if (sprt.isDecided(wins, draws, losses)){
+                    break;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Game failed", e.getCause());
+        } finally {
+            // games in progress are abandoned, the workers are daemon threads
+            workers.shutdownNow();
+        }
+
+        System.out.printf("%d games in %ds: %s%n", played, (System.nanoTime() - startNanos) / 1_000_000_000, getSummary());
+        System.out.println(sprt.getVerdict(wins, draws, losses));
+    }
+
+    private void record(Game game){
+        int resultForA = game.aIsWhite ? game.result : WHITE_WINS - game.result;
+        if (resultForA == WHITE_WINS){
+            wins++;
+        } else if (resultForA == DRAW){
+            draws++;
+        } else {
+            losses++;
+        }
+    }
+
+    private String getSummary(){
+        int games = wins + draws + losses;
+        double score = (wins + draws / 2.0) / games;
+        return String.format("a +%d =%d -%d, score %.1f%%, elo %s, LLR %.2f (%.2f, %.2f)", wins, draws, losses, score * 100,
+                getEloString(wins, draws, losses), sprt.getLogLikelihoodRatio(wins, draws, losses), sprt.getLowerBound(), sprt.getUpperBound());
+    }
+
+    private static String getResultString(int result){
+        return switch (result){
+            case WHITE_WINS -> "1-0";
+            case DRAW -> "1/2-1/2";
+            default -> "0-1";
+        };
+    }
+
+    // elo difference with its 95% confidence interval, from the mean and variance of the game scores. the score's
+    // margin is turned into elo with the slope of the elo curve at the score
+    static String getEloString(int wins, int draws, int losses){
+        int games = wins + draws + losses;
+        double score = (wins + draws / 2.0) / games;
+        if (score <= 0 || score >= 1){
+            return score <= 0 ? "-inf" : "+inf";
+        }
+        double variance = (wins * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2) + losses * Math.pow(score, 2)) / games;
+        double margin = 1.96 * Math.sqrt(variance / games);
+        double eloMargin = margin * 400 / (Math.log(10) * score * (1 - score));
+        return String.format("%+.1f +/- %.1f", getElo(score), eloMargin);
+    }
+
+    static double getElo(double score){
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    static double getScore(double elo){
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    // one game between the two engines, whose boards follow the game move by move so their searches know the
+    // history (repetitions). even games have a as white, odd games play the same opening with the colours swapped
+    private Game play(Board[] engines, int gameNumber){
+        boolean aIsWhite = gameNumber % 2 == 0;
+        String opening = openings.get(gameNumber / 2 % openings.size());
+        Board white = engines[aIsWhite ? 0 : 1];
+        Board black = engines[aIsWhite ? 1 : 0];
+        for (Board engine : engines){
+            engine.loadFen(opening);
+            // nothing carries over from the previous game
+            engine.getTranspositionTable().clear();
+        }
+
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int plies = 0; ; plies++){
+            // both boards hold the same position, either one can judge it
+            Board position = white;
+            if (position.generateMoves(moves) == 0){
+                if (!position.isInCheck()){
+                    return new Game(gameNumber, aIsWhite, DRAW, "stalemate", plies);
+                }
+                return new Game(gameNumber, aIsWhite, position.colourToPlay == Colour.White ? BLACK_WINS : WHITE_WINS, "checkmate", plies);
+            }
+            if (position.getRepetitionCount() >= 2){
+                return new Game(gameNumber, aIsWhite, DRAW, "threefold repetition", plies);
+            }
+            if (position.isDrawByRule()){
+                return new Game(gameNumber, aIsWhite, DRAW, "fifty move rule", plies);
+            }
+            if (position.isInsufficientMaterial()){
+                return new Game(gameNumber, aIsWhite, DRAW, "insufficient material", plies);
+            }
+            if (plies == MAX_GAME_PLIES){
+                return new Game(gameNumber, aIsWhite, DRAW, "adjudicated after " + MAX_GAME_PLIES + " plies", plies);
+            }
+
+            Board engineToPlay = position.colourToPlay == Colour.White ? white : black;
+            Move move = engineToPlay.search(depth, moveTime, nodes).getBestMove();
+            if (move == null){
+                throw new IllegalStateException("No move found in " + engineToPlay.toFen());
+            }
+            white.playMove(move);
+            black.playMove(move);
+        }
+    }
+
+    private static final class Game {
+        final int number;
+        final boolean aIsWhite;
+        // WHITE_WINS, DRAW or BLACK_WINS
+        final int result;
+        final String reason;
+        final int plies;
+
+        Game(int number, boolean aIsWhite, int result, String reason, int plies){
+            this.number = number;
+            this.aIsWhite = aIsWhite;
+            this.result = result;
+            this.reason = reason;
+            this.plies = plies;
+        }
+    }
+
+    // one side of the match: the search features it uses and the network it evaluates with, if any
+    static final class EngineConfig {
+        private final String description;
+        private final EnumSet<SearchFeature> searchFeatures;
+        private final Nnue network;
+
+        private EngineConfig(String description, EnumSet<SearchFeature> searchFeatures, Nnue network){
+            this.description = description;
+            this.searchFeatures = searchFeatures;
+            this.network = network;
+        }
+
+        // e.g. "-NullMovePruning,eval=net.nnue", an empty config is the default engine
+        static EngineConfig parse(String config){
+            EnumSet<SearchFeature> searchFeatures = EnumSet.allOf(SearchFeature.class);
+            Nnue network = null;
+            for (String change : config.split(",")){
+                String trimmed = change.trim();
+                if (trimmed.isEmpty()){
+                    continue;
+                }
+                if (trimmed.startsWith("eval=")){
+                    try {
+                        network = Nnue.load(Path.of(trimmed.substring(5)));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Can't read network " + trimmed.substring(5), e);
+                    }
+                } else if (trimmed.startsWith("-") || trimmed.startsWith("+")){
+                    SearchFeature feature = SearchFeature.valueOf(trimmed.substring(1));
+                    if (trimmed.startsWith("-")){
+                        searchFeatures.remove(feature);
+                    } else {
+                        searchFeatures.add(feature);
+                    }
+                } else {
+                    throw new IllegalArgumentException("Unknown engine option: " + trimmed);
+                }
+            }
+            return new EngineConfig(config.isBlank() ? "default" : config, searchFeatures, network);
+        }
+
+        Board createBoard(int hashSizeMb){
+            Board board = new Board();
+            board.setHashSize(hashSizeMb);
+            board.setSearchFeatures(searchFeatures);
+            board.setNetwork(network);
+            return board;
+        }
+
+        @Override
+        public String toString(){
+            return description;
+        }
+    }
+
+    // generalised SPRT on the game scores (normal approximation, logistic elo): H0 is that a is elo0 stronger than
+    // b, H1 that it is elo1 stronger. the log likelihood ratio moves towards the upper bound as evidence for H1
+    // builds up and towards the lower bound for H0; alpha and beta are the chances of accepting the wrong one
+    static final class Sprt {
+        private final double elo0;
+        private final double elo1;
+        private final double lowerBound;
+        private final double upperBound;
+
+        Sprt(double elo0, double elo1, double alpha, double beta){
+            if (elo1 <= elo0){
+                throw new IllegalArgumentException("elo1 must be greater than elo0");
+            }
+            this.elo0 = elo0;
+            this.elo1 = elo1;
+            this.lowerBound = Math.log(beta / (1 - alpha));
+            this.upperBound = Math.log((1 - beta) / alpha);
+        }
+
+        double getLowerBound(){
+            return lowerBound;
+        }
+
+        double getUpperBound(){
+            return upperBound;
+        }
+
+        double getLogLikelihoodRatio(int wins, int draws, int losses){
+            int games = wins + draws + losses;
+            if (games == 0){
+                return 0;
+            }
+            double score = (wins + draws / 2.0) / games;
+            double variance = (wins * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2) + losses * Math.pow(score, 2)) / games;
+            // until both wins and losses (or draws) were seen there is nothing to go on
+            if (variance == 0){
+                return 0;
+            }
+            double score0 = getScore(elo0);
+            double score1 = getScore(elo1);
+            return games * (score1 - score0) * (2 * score - score0 - score1) / (2 * variance);
+        }
+
+        boolean isDecided(int wins, int draws, int losses){
+            double llr = getLogLikelihoodRatio(wins, draws, losses);
+            return llr <= lowerBound || llr >= upperBound;
+        }
+
+        String getVerdict(int wins, int draws, int losses){
+            double llr = getLogLikelihoodRatio(wins, draws, losses);
+            if (llr >= upperBound){
+                return String.format("SPRT: H1 accepted, a is at least %.1f elo stronger (LLR %.2f)", elo1, llr);
+            }
+            if (llr <= lowerBound){
+                return String.format("SPRT: H0 accepted, a is at most %.1f elo stronger (LLR %.2f)", elo0, llr);
+            }
+            return String.format("SPRT: undecided (LLR %.2f between %.2f and %.2f)", llr, lowerBound, upperBound);
+        }
+    }
+}
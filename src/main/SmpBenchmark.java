@@ -0,0 +1,46 @@
+package main;
+
+public class SmpBenchmark {
+    // measures lazy SMP scaling as time to reach a fixed depth on a few positions, with 1, 2, 4... threads
+    // usage: SmpBenchmark [depth] [max threads]
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        // positions reached by letting the engine play a few moves from the start, so they're the same every run
+        Board[] positions = new Board[]{createPosition(0), createPosition(6), createPosition(12)};
+
+        long singleThreadMillis = 0;
+        for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads)){
+            long totalMillis = 0;
+
+            for (Board position : positions){
+                // fresh copy and transposition table, so no run benefits from an earlier one
+                Board board = new Board(position);
+                board.setThreadCount(threads);
+
+                long startNanos = System.nanoTime();
+                board.findBestMove(depth);
+                totalMillis += (System.nanoTime() - startNanos) / 1_000_000;
+            }
+
+            if (threads == 1){
+                singleThreadMillis = totalMillis;
+            }
+            System.out.printf("threads: %2d, time to depth %d: %6dms, speedup: %.2f%n",
+                    threads, depth, totalMillis, (double) singleThreadMillis / Math.max(totalMillis, 1));
+
+            if (threads == maxThreads){
+                break;
+            }
+        }
+    }
+
+    private static Board createPosition(int movesPlayed){
+        Board board = new Board();
+        for (int i = 0; i < movesPlayed; i++){
+            board.playMove(board.findBestMove(4));
+        }
+        return new Board(board);
+    }
+}
@@ -0,0 +1,203 @@
+package main;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// one endgame table for a pawnless material balance (e.g. KQvKR): a byte for every placement of its pieces and
+// colour to play, giving the distance to mate in plies.
+// a position is indexed by colour to play, the white king (one of 10 squares, see below), the black king and
+// then the other pieces, white's first, from the strongest piece down. without pawns the board can be mirrored
+// and rotated freely, so every position is first turned so that the white king is in the a1-d1-d4 triangle
+// (and, with the white king on the diagonal, the first piece off the diagonal below it)
+public class Tablebase {
+    // stored values: 0 is a draw, 255 an illegal or unused index, anything else the number of plies to mate + 1.
+    // the side to move wins when mate is an odd number of plies away and loses when it's even
+    public static final int DRAW = 0;
+    public static final int ILLEGAL = 255;
+    public static final int MAX_PLIES_TO_MATE = 253;
+
+    public static final int MAX_PIECES = 4;
+
+    // a1, b1, c1, d1, b2, c2, d2, c3, d3, d4
+    static final int KING_SQUARE_COUNT = 10;
+    static final int[] KING_SQUARES = {0, 1, 2, 3, 9, 10, 11, 18, 19, 27};
+    private static final int[] KING_SQUARE_INDEX = new int[64];
+
+    // names of the piece types in table names, in PieceType order
+    private static final String PIECE_CHARACTERS = "PNBRQK";
+
+    static {
+        Arrays.fill(KING_SQUARE_INDEX, -1);
+        for (int i = 0; i < KING_SQUARES.length; i++){
+            KING_SQUARE_INDEX[KING_SQUARES[i]] = i;
+        }
+    }
+
+    private final String name;
+    // bitboard indexes of the pieces other than the kings, in index order
+    private final int[] pieces;
+    private final ByteBuffer values;
+
+    public Tablebase(String name, ByteBuffer values){
+        this.name = name;
+        this.pieces = parsePieces(name);
+        this.values = values;
+        if (values.capacity() != getSize(pieces.length + 2)){
+            throw new IllegalArgumentException("Table " + name + " should have " + getSize(pieces.length + 2) + " entries, not " + values.capacity());
+        }
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    int[] getPieces(){
+        return pieces;
+    }
+
+    // value at a canonical index
+    int getValue(int index){
+        return values.get(index) & 0xff;
+    }
+
+    // value of a position with this table's pieces (with the colours swapped when mirrored), found from its
+    // bitboards. squares is scratch space for MAX_PIECES squares, so probing doesn't allocate
+    int getValue(long[] bitboards, int colourToPlay, boolean mirrored, int[] squares){
+        int swap = mirrored ? 1 : 0;
+        int flip = mirrored ? 56 : 0;
+
+        squares[0] = Long.numberOfTrailingZeros(bitboards[PieceType.King.ordinal() * 2 + swap]) ^ flip;
+        squares[1] = Long.numberOfTrailingZeros(bitboards[PieceType.King.ordinal() * 2 + 1 - swap]) ^ flip;
+        for (int i = 0; i < pieces.length; i++){
+            long pieceBitboard = bitboards[pieces[i] ^ swap];
+            // two of the same piece follow each other in the table, the second one takes the second square
+            if (i > 0 && pieces[i] == pieces[i - 1]){
+                pieceBitboard &= pieceBitboard - 1;
+            }
+            squares[i + 2] = Long.numberOfTrailingZeros(pieceBitboard) ^ flip;
+        }
+        return getValue(getIndex(squares, pieces.length + 2, colourToPlay ^ swap));
+    }
+
+    public static int getSize(int pieceCount){
+        return 2 * KING_SQUARE_COUNT << (6 * (pieceCount - 1));
+    }
+
+    // "KQvKR" -> white queen, black rook. the strongest side is white and pieces go from strongest to weakest
+    static int[] parsePieces(String name){
+        String[] sides = name.split("v");
+        if (sides.length != 2 || !sides[0].startsWith("K") || !sides[1].startsWith("K")){
+            throw new IllegalArgumentException("Invalid table name: " + name);
+        }
+
+        int[] pieces = new int[sides[0].length() + sides[1].length() - 2];
+        int count = 0;
+        for (int colour = 0; colour < 2; colour++){
+            for (int i = 1; i < sides[colour].length(); i++){
+                int type = PIECE_CHARACTERS.indexOf(sides[colour].charAt(i));
+                if (type <= PieceType.Pawn.ordinal() || type == PieceType.King.ordinal()){
+                    throw new IllegalArgumentException("Only pawnless tables with one king a side are supported: " + name);
+                }
+                pieces[count++] = type * 2 + colour;
+            }
+        }
+        if (count + 2 > MAX_PIECES){
+            throw new IllegalArgumentException("Tables have at most " + MAX_PIECES + " pieces: " + name);
+        }
+        return pieces;
+    }
+
+    // the table name for a set of pieces given as counts per bitboard index, e.g. white queen + black rook -> "KQvKR"
+    static String getName(int[] pieceCounts){
+        StringBuilder name = new StringBuilder();
+        for (int colour = 0; colour < 2; colour++){
+            name.append(colour == 0 ? "K" : "vK");
+            for (int type = PieceType.Queen.ordinal(); type > PieceType.Pawn.ordinal(); type--){
+                for (int i = 0; i < pieceCounts[type * 2 + colour]; i++){
+                    name.append(PIECE_CHARACTERS.charAt(type));
+                }
+            }
+        }
+        return name.toString();
+    }
+
+    // tables are only made for the stronger side as white: more pieces, or the strongest pieces first.
+    // positions where black is the stronger side are looked up with the colours swapped
+    static boolean isStrongerOrEqual(String white, String black){
+        if (white.length() != black.length()){
+            return white.length() > black.length();
+        }
+        for (int i = 1; i < white.length(); i++){
+            int whiteType = PIECE_CHARACTERS.indexOf(white.charAt(i));
+            int blackType = PIECE_CHARACTERS.indexOf(black.charAt(i));
+            if (whiteType != blackType){
+                return whiteType > blackType;
+            }
+        }
+        return true;
+    }
+
+    // squares[0] is the white king, squares[1] the black king, then the other pieces in table order.
+    // the squares are transformed to their canonical orientation in place
+    static int getIndex(int[] squares, int count, int colourToPlay){
+        int whiteKing = squares[0];
+        int flip = ((whiteKing & 7) > 3 ? 7 : 0) | ((whiteKing >>> 3) > 3 ? 56 : 0);
+        for (int i = 0; i < count; i++){
+            squares[i] ^= flip;
+        }
+
+        if (shouldTranspose(squares, count)){
+            for (int i = 0; i < count; i++){
+                squares[i] = transpose(squares[i]);
+            }
+        }
+
+        int index = colourToPlay * KING_SQUARE_COUNT + KING_SQUARE_INDEX[squares[0]];
+        for (int i = 1; i < count; i++){
+            index = (index << 6) | squares[i];
+        }
+        return index;
+    }
+
+    // reverse of getIndex, returns the colour to play
+    static int decodeIndex(int index, int[] squares, int count){
+        for (int i = count - 1; i >= 1; i--){
+            squares[i] = index & 63;
+            index >>>= 6;
+        }
+        squares[0] = KING_SQUARES[index % KING_SQUARE_COUNT];
+        return index / KING_SQUARE_COUNT;
+    }
+
+    // true if the index is the one getIndex gives for its own position, other indexes are never looked up
+    static boolean isCanonical(int[] squares, int count){
+        return !shouldTranspose(squares, count);
+    }
+
+    private static boolean shouldTranspose(int[] squares, int count){
+        for (int i = 0; i < count; i++){
+            int file = squares[i] & 7;
+            int rank = squares[i] >>> 3;
+            if (rank != file){
+                return rank > file;
+            }
+        }
+        return false;
+    }
+
+    private static int transpose(int square){
+        return ((square & 7) << 3) | (square >>> 3);
+    }
+
+    // squares attacked by a piece, the same for both colours as there are no pawns
+    static long getAttacks(int bitboardIndex, int square, long occupied){
+        return switch (bitboardIndex / 2){
+            case 1 -> AttackTables.KNIGHT_ATTACKS[square];
+            case 2 -> AttackTables.getBishopAttacks(square, occupied);
+            case 3 -> AttackTables.getRookAttacks(square, occupied);
+            case 4 -> AttackTables.getQueenAttacks(square, occupied);
+            case 5 -> AttackTables.KING_ATTACKS[square];
+            default -> throw new IllegalArgumentException("No pawns in tables");
+        };
+    }
+}
@@ -0,0 +1,375 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// builds the distance to mate tables for pawnless endings of 3 and 4 pieces by retrograde analysis: checkmates
+// are found first, then every pass goes back one ply from the positions decided by the previous pass, through the
+// moves that lead to them. captures leave the table, so the smaller tables are generated first and looked up
+// usage: TablebaseGenerator <directory> [table names, e.g. KQvK KRvK, all 3 and 4 piece tables by default]
+public class TablebaseGenerator {
+    public static final String[] ALL_TABLES = {
+            "KQvK", "KRvK", "KBvK", "KNvK",
+            "KQQvK", "KQRvK", "KQBvK", "KQNvK", "KRRvK", "KRBvK", "KRNvK", "KBBvK", "KBNvK", "KNNvK",
+            "KQvKQ", "KQvKR", "KQvKB", "KQvKN", "KRvKR", "KRvKB", "KRvKN", "KBvKB", "KBvKN", "KNvKN",
+    };
+
+    private final Tablebases generated = new Tablebases();
+
+    // the table being generated
+    private int pieceCount;
+    private int[] pieces;
+    private byte[] values;
+
+    // scratch space, the generator only runs on one thread
+    private final int[] squares = new int[Tablebase.MAX_PIECES];
+    private final int[] childSquares = new int[Tablebase.MAX_PIECES];
+    private final long[] childBitboards = new long[12];
+    private final int[] decidedSquares = new int[Tablebase.MAX_PIECES];
+    private final int[] predecessorSquares = new int[Tablebase.MAX_PIECES];
+
+    // positions whose value is known to be decided at a later pass, by a capture into a smaller table
+    private IntList[] laterPasses;
+    // pass in which a position was last looked at, so it isn't evaluated twice in the same pass
+    private short[] lastEvaluated;
+
+    // result of the last evaluate call
+    private int legalMoveCount;
+    private int shortestWinningPlies;
+    private int longestLosingPlies;
+    private boolean allMovesLose;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1){
+            System.err.println("usage: TablebaseGenerator <directory> [table names]");
+            System.exit(1);
+        }
+        Path directory = Path.of(args[0]);
+        Files.createDirectories(directory);
+        String[] names = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : ALL_TABLES;
+
+        TablebaseGenerator generator = new TablebaseGenerator();
+        for (String name : names){
+            generator.generateWithSubtables(name, directory);
+        }
+    }
+
+    // the tables that captures lead to are generated (or read back) first
+    private void generateWithSubtables(String name, Path directory) throws IOException {
+        if (generated.getNames().contains(name)){
+            return;
+        }
+        int[] tablePieces = Tablebase.parsePieces(name);
+        for (int captured = 0; captured < tablePieces.length; captured++){
+            int[] pieceCounts = new int[12];
+            for (int i = 0; i < tablePieces.length; i++){
+                if (i != captured){
+                    pieceCounts[tablePieces[i]]++;
+                }
+            }
+            String subtable = getCanonicalName(Tablebase.getName(pieceCounts));
+            if (!subtable.equals("KvK")){
+                generateWithSubtables(subtable, directory);
+            }
+        }
+
+        Path file = directory.resolve(name + Tablebases.FILE_EXTENSION);
+        Tablebase table;
+        if (Files.exists(file) && Files.size(file) == Tablebase.getSize(tablePieces.length + 2)){
+            table = new Tablebase(name, ByteBuffer.wrap(Files.readAllBytes(file)));
+        } else {
+            long startNanos = System.nanoTime();
+            table = generate(name);
+            Files.write(file, values);
+            System.out.println(name + ": " + describe(values) + " in " + (System.nanoTime() - startNanos) / 1_000_000 + "ms");
+        }
+        generated.add(table);
+    }
+
+    private static String getCanonicalName(String name){
+        String[] sides = name.split("v");
+        return Tablebase.isStrongerOrEqual(sides[0], sides[1]) ? name : sides[1] + "v" + sides[0];
+    }
+
+    public Tablebase generate(String name){
+        int[] tablePieces = Tablebase.parsePieces(name);
+        pieceCount = tablePieces.length + 2;
+        pieces = new int[pieceCount];
+        pieces[0] = PieceType.King.ordinal() * 2;
+        pieces[1] = PieceType.King.ordinal() * 2 + 1;
+        System.arraycopy(tablePieces, 0, pieces, 2, tablePieces.length);
+
+        int size = Tablebase.getSize(pieceCount);
+        values = new byte[size];
+        lastEvaluated = new short[size];
+        laterPasses = new IntList[Tablebase.MAX_PLIES_TO_MATE + 2];
+        for (int i = 0; i < laterPasses.length; i++){
+            laterPasses[i] = new IntList();
+        }
+
+        // pass 0: illegal positions, checkmates, and the positions decided by a capture
+        IntList decided = new IntList();
+        for (int index = 0; index < size; index++){
+            int colourToPlay = Tablebase.decodeIndex(index, squares, pieceCount);
+            if (!Tablebase.isCanonical(squares, pieceCount) || !isLegal(squares, colourToPlay)){
+                values[index] = (byte) Tablebase.ILLEGAL;
+                continue;
+            }
+
+            evaluate(index);
+            if (legalMoveCount == 0){
+                if (isInCheck(squares, colourToPlay)){
+                    values[index] = 1;
+                    decided.add(index);
+                }
+                // stalemate stays a draw
+            } else if (shortestWinningPlies != Integer.MAX_VALUE){
+                laterPasses[shortestWinningPlies].add(index);
+            } else if (allMovesLose){
+                laterPasses[longestLosingPlies].add(index);
+            }
+        }
+
+        // pass n decides the positions n plies from mate: wins on odd passes (a move to a position lost in n - 1),
+        // losses on even passes (every move goes to a position won in at most n - 1, and one in exactly n - 1)
+        for (int pass = 1; pass <= Tablebase.MAX_PLIES_TO_MATE; pass++){
+            IntList next = new IntList();
+
+            for (int i = 0; i < decided.size(); i++){
+                addPredecessors(decided.get(i), pass, next);
+            }
+            IntList later = laterPasses[pass];
+            for (int i = 0; i < later.size(); i++){
+                consider(later.get(i), pass, next);
+            }
+            laterPasses[pass] = null;
+
+            decided = next;
+            if (decided.size() == 0 && !hasLaterPasses(pass)){
+                break;
+            }
+        }
+
+        Tablebase table = new Tablebase(name, ByteBuffer.wrap(values));
+        lastEvaluated = null;
+        laterPasses = null;
+        return table;
+    }
+
+    private boolean hasLaterPasses(int pass){
+        for (int i = pass + 1; i < laterPasses.length; i++){
+            if (laterPasses[i].size() > 0){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // positions that reach the decided one with a move that isn't a capture: the side that just moved moves
+    // a piece back to any empty square it attacks, pieces without pawns move the same way in both directions
+    private void addPredecessors(int decidedIndex, int pass, IntList next){
+        int colourToPlay = Tablebase.decodeIndex(decidedIndex, decidedSquares, pieceCount);
+        int colourMoved = 1 - colourToPlay;
+        long occupied = getOccupied(decidedSquares);
+
+        for (int piece = 0; piece < pieceCount; piece++){
+            if ((pieces[piece] & 1) != colourMoved){
+                continue;
+            }
+            long origins = Tablebase.getAttacks(pieces[piece], decidedSquares[piece], occupied) & ~occupied;
+            while (origins != 0){
+                System.arraycopy(decidedSquares, 0, predecessorSquares, 0, pieceCount);
+                predecessorSquares[piece] = Long.numberOfTrailingZeros(origins);
+                consider(Tablebase.getIndex(predecessorSquares, pieceCount, colourMoved), pass, next);
+                origins &= origins - 1;
+            }
+        }
+    }
+
+    private void consider(int index, int pass, IntList next){
+        if (values[index] != Tablebase.DRAW || lastEvaluated[index] == pass){
+            return;
+        }
+        lastEvaluated[index] = (short) pass;
+
+        Tablebase.decodeIndex(index, squares, pieceCount);
+        evaluate(index);
+
+        int plies;
+        if (pass % 2 == 1){
+            plies = shortestWinningPlies;
+        } else {
+            plies = allMovesLose && legalMoveCount > 0 ? longestLosingPlies : Integer.MAX_VALUE;
+        }
+
+        if (plies == pass){
+            values[index] = (byte) (pass + 1);
+            next.add(index);
+        } else if (plies > pass && plies <= Tablebase.MAX_PLIES_TO_MATE){
+            laterPasses[plies].add(index);
+        }
+    }
+
+    // goes through the legal moves of the position in squares, using what is known so far about the positions
+    // they lead to
+    private void evaluate(int index){
+        int colourToPlay = index / (Tablebase.KING_SQUARE_COUNT << (6 * (pieceCount - 1)));
+        long occupied = getOccupied(squares);
+        long ownPieces = 0L;
+        for (int piece = 0; piece < pieceCount; piece++){
+            if ((pieces[piece] & 1) == colourToPlay){
+                ownPieces |= 1L << squares[piece];
+            }
+        }
+
+        legalMoveCount = 0;
+        shortestWinningPlies = Integer.MAX_VALUE;
+        longestLosingPlies = 0;
+        allMovesLose = true;
+
+        for (int piece = 0; piece < pieceCount; piece++){
+            if ((pieces[piece] & 1) != colourToPlay){
+                continue;
+            }
+            long targets = Tablebase.getAttacks(pieces[piece], squares[piece], occupied) & ~ownPieces;
+            while (targets != 0){
+                int target = Long.numberOfTrailingZeros(targets);
+                targets &= targets - 1;
+
+                int childValue = getChildValue(piece, target, colourToPlay);
+                if (childValue == Tablebase.ILLEGAL){
+                    continue;
+                }
+                legalMoveCount++;
+
+                // the child's value is from the opponent's point of view
+                if (childValue == Tablebase.DRAW){
+                    allMovesLose = false;
+                } else if ((childValue - 1) % 2 == 0){
+                    shortestWinningPlies = Math.min(shortestWinningPlies, childValue);
+                    allMovesLose = false;
+                } else {
+                    longestLosingPlies = Math.max(longestLosingPlies, childValue);
+                }
+            }
+        }
+    }
+
+    // value of the position after moving a piece, ILLEGAL if it leaves the mover's king attacked
+    private int getChildValue(int movingPiece, int target, int colourToPlay){
+        System.arraycopy(squares, 0, childSquares, 0, pieceCount);
+        childSquares[movingPiece] = target;
+
+        int captured = -1;
+        for (int piece = 0; piece < pieceCount; piece++){
+            if (piece != movingPiece && squares[piece] == target){
+                captured = piece;
+            }
+        }
+
+        long occupied = getOccupied(childSquares);
+        long kingMask = 1L << childSquares[colourToPlay];
+        for (int piece = 0; piece < pieceCount; piece++){
+            if (piece != captured && (pieces[piece] & 1) != colourToPlay
+                    && (Tablebase.getAttacks(pieces[piece], childSquares[piece], occupied) & kingMask) != 0){
+                return Tablebase.ILLEGAL;
+            }
+        }
+
+        if (captured < 0){
+            return values[Tablebase.getIndex(childSquares, pieceCount, 1 - colourToPlay)] & 0xff;
+        }
+
+        // two bare kings
+        if (pieceCount == 3){
+            return Tablebase.DRAW;
+        }
+        Arrays.fill(childBitboards, 0L);
+        for (int piece = 0; piece < pieceCount; piece++){
+            if (piece != captured){
+                childBitboards[pieces[piece]] |= 1L << childSquares[piece];
+            }
+        }
+        int value = generated.probe(childBitboards, 1 - colourToPlay, childSquares);
+        if (value == Tablebases.NOT_FOUND){
+            throw new IllegalStateException("Missing table for " + Arrays.toString(childBitboards));
+        }
+        return value;
+    }
+
+    // no overlapping pieces and the side that just moved isn't in check
+    private boolean isLegal(int[] position, int colourToPlay){
+        for (int i = 0; i < pieceCount; i++){
+            for (int j = i + 1; j < pieceCount; j++){
+                if (position[i] == position[j]){
+                    return false;
+                }
+            }
+        }
+        return !isAttacked(position, position[1 - colourToPlay], colourToPlay);
+    }
+
+    private boolean isInCheck(int[] position, int colourToPlay){
+        return isAttacked(position, position[colourToPlay], 1 - colourToPlay);
+    }
+
+    private boolean isAttacked(int[] position, int square, int byColour){
+        long occupied = getOccupied(position);
+        for (int piece = 0; piece < pieceCount; piece++){
+            if ((pieces[piece] & 1) == byColour && (Tablebase.getAttacks(pieces[piece], position[piece], occupied) & (1L << square)) != 0){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long getOccupied(int[] position){
+        long occupied = 0L;
+        for (int piece = 0; piece < pieceCount; piece++){
+            occupied |= 1L << position[piece];
+        }
+        return occupied;
+    }
+
+    private static String describe(byte[] values){
+        long wins = 0;
+        long losses = 0;
+        int longestMate = 0;
+        for (byte value : values){
+            int v = value & 0xff;
+            if (v != Tablebase.DRAW && v != Tablebase.ILLEGAL){
+                if ((v - 1) % 2 == 1){
+                    wins++;
+                } else {
+                    losses++;
+                }
+                longestMate = Math.max(longestMate, v - 1);
+            }
+        }
+        return wins + " wins, " + losses + " losses, longest mate " + longestMate + " plies";
+    }
+
+    // growable list of ints, so the pass lists don't box millions of indexes
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value){
+            if (size == values.length){
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int i){
+            return values[i];
+        }
+
+        int size(){
+            return size;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package main;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// the endgame tables available to the search, looked up by material. tables read from a directory are memory
+// mapped, so probing costs a page access rather than loading every table onto the heap up front
+public class Tablebases {
+    public static final String FILE_EXTENSION = ".dtm";
+    public static final int NOT_FOUND = -1;
+
+    // material is keyed by the counts of knights, bishops, rooks and queens of each colour, 0 to 2 each, in base 3
+    private static final int MATERIAL_KEYS = 6561;
+    private final Tablebase[] tables = new Tablebase[MATERIAL_KEYS];
+    private final boolean[] mirrored = new boolean[MATERIAL_KEYS];
+    private final List<String> names = new ArrayList<>();
+
+    public static Tablebases open(Path directory) throws IOException {
+        Tablebases tablebases = new Tablebases();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_EXTENSION)){
+            for (Path file : files){
+                String fileName = file.getFileName().toString();
+                String name = fileName.substring(0, fileName.length() - FILE_EXTENSION.length());
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+                    tablebases.add(new Tablebase(name, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+                }
+            }
+        }
+        return tablebases;
+    }
+
+    // the table is used for its material and for the same material with the colours swapped
+    public void add(Tablebase table){
+        int[] pieceCounts = new int[12];
+        for (int piece : table.getPieces()){
+            pieceCounts[piece]++;
+        }
+        int[] swappedCounts = new int[12];
+        for (int i = 0; i < 12; i++){
+            swappedCounts[i ^ 1] = pieceCounts[i];
+        }
+
+        int swappedKey = getMaterialKey(swappedCounts);
+        tables[swappedKey] = table;
+        mirrored[swappedKey] = true;
+
+        int key = getMaterialKey(pieceCounts);
+        tables[key] = table;
+        mirrored[key] = false;
+
+        names.add(table.getName());
+    }
+
+    public List<String> getNames(){
+        return names;
+    }
+
+    // the stored value for the position (see Tablebase), or NOT_FOUND when there's no table for its material or
+    // the position is illegal. squares is scratch space for Tablebase.MAX_PIECES squares
+    int probe(long[] bitboards, int colourToPlay, int[] squares){
+        int key = 0;
+        for (int i = 11; i >= 0; i--){
+            int count = Long.bitCount(bitboards[i]);
+            if (i / 2 == PieceType.Pawn.ordinal() || i / 2 == PieceType.King.ordinal()){
+                if (count != (i / 2 == PieceType.King.ordinal() ? 1 : 0)){
+                    return NOT_FOUND;
+                }
+            } else if (count > 2){
+                return NOT_FOUND;
+            } else {
+                key = key * 3 + count;
+            }
+        }
+
+        Tablebase table = tables[key];
+        if (table == null){
+            return NOT_FOUND;
+        }
+        int value = table.getValue(bitboards, colourToPlay, mirrored[key], squares);
+        return value == Tablebase.ILLEGAL ? NOT_FOUND : value;
+    }
+
+    private static int getMaterialKey(int[] pieceCounts){
+        int key = 0;
+        for (int i = 9; i >= 2; i--){
+            key = key * 3 + pieceCounts[i];
+        }
+        return key;
+    }
+}
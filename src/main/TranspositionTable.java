@@ -0,0 +1,105 @@
+package main;
+
+import java.util.Arrays;
+
+public class TranspositionTable {
+    // fixed size hash table of search results, stored in two primitive arrays so it never allocates after creation.
+    // each entry's data is packed into a long:
+    // bits 0-31  -> score in centipawns
+    // bits 32-39 -> depth searched
+    // bits 40-41 -> bound type
+    // bits 42-57 -> best move (lower 16 bits of the packed move: starting square, target square and flags)
+    // bits 58-63 -> age of the search that stored it
+    public static final int EXACT = 1;
+    public static final int LOWER_BOUND = 2;
+    public static final int UPPER_BOUND = 3;
+
+    public static final long NOT_FOUND = 0L;
+
+    private static final int ENTRY_SIZE_BYTES = 16;
+
+    // the key array holds key ^ data, a torn write from another thread then fails verification instead
+    // of returning data belonging to a different position, so no locking is needed
+    private final long[] keys;
+    private final long[] data;
+    private final int indexMask;
+    private int age;
+
+    public TranspositionTable(int sizeInMb){
+        if (sizeInMb < 1){
+            throw new IllegalArgumentException("Transposition table size must be at least 1 MB, got " + sizeInMb);
+        }
+
+        // round down to a power of two so the index is just a mask of the key
+        long entries = Long.highestOneBit((long) sizeInMb * 1024 * 1024 / ENTRY_SIZE_BYTES);
+        entries = Math.min(entries, 1L << 30);
+
+        this.keys = new long[(int) entries];
+        this.data = new long[(int) entries];
+        this.indexMask = (int) entries - 1;
+    }
+
+    public int getSizeInMb(){
+        return (int) ((long) keys.length * ENTRY_SIZE_BYTES / (1024 * 1024));
+    }
+
+    // called at the start of every search so entries from older searches get replaced first
+    public void newSearch(){
+        age = (age + 1) & 0x3f;
+    }
+
+    public void clear(){
+        Arrays.fill(keys, 0L);
+        Arrays.fill(data, 0L);
+    }
+
+    public long probe(long key){
+        int index = (int) key & indexMask;
+        long entryData = data[index];
+
+        if ((keys[index] ^ entryData) != key){
+            return NOT_FOUND;
+        }
+        return entryData;
+    }
+
+    public void store(long key, int score, int depth, int bound, int move){
+        int index = (int) key & indexMask;
+        long storedData = data[index];
+
+        // depth-preferred: keep a deeper result for the same search unless it's the same position being updated
+        boolean samePosition = (keys[index] ^ storedData) == key;
+        if (storedData != NOT_FOUND && !samePosition && getAge(storedData) == age && getDepth(storedData) > depth){
+            return;
+        }
+
+        long entryData = (score & 0xffffffffL)
+                | ((long) depth << 32)
+                | ((long) bound << 40)
+                | ((long) (move & 0xffff) << 42)
+                | ((long) age << 58);
+
+        data[index] = entryData;
+        keys[index] = key ^ entryData;
+    }
+
+    public static int getScore(long entryData){
+        return (int) entryData;
+    }
+
+    public static int getDepth(long entryData){
+        return (int) (entryData >>> 32) & 0xff;
+    }
+
+    public static int getBound(long entryData){
+        return (int) (entryData >>> 40) & 0x3;
+    }
+
+    public static int getMove(long entryData){
+        return (int) (entryData >>> 42) & 0xffff;
+    }
+
+    private static int getAge(long entryData){
+        return (int) (entryData >>> 58) & 0x3f;
+    }
+}
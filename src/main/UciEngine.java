@@ -0,0 +1,374 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// headless front end speaking the Universal Chess Interface protocol on stdin/stdout, so the engine can be
+// driven by chess GUIs and tournament managers. searches run on a worker thread so that stop and isready
+// are answered while searching
+public class UciEngine {
+    private static final String ENGINE_NAME = "chess-engine";
+    private static final String ENGINE_AUTHOR = "Arthur Wronski";
+
+    private static final int MAX_HASH_SIZE_MB = 4096;
+    private static final int MAX_THREADS = 256;
+
+    // assumed number of moves left in the game when the GUI doesn't say (movestogo)
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+    // kept back from the clock for the time it takes to send the move
+    private static final long MOVE_OVERHEAD_MS = 50;
+
+    private final PrintStream output;
+    private final ExecutorService searchThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "uci-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Board position = new Board();
+    private TranspositionTable transpositionTable = new TranspositionTable(Board.DEFAULT_HASH_SIZE_MB);
+    private int threadCount = 1;
+    private PolyglotBook openingBook;
+    private Tablebases tablebases;
+    private Nnue network;
+    private AnalysisCache analysisCache;
+    // each one is a check option named after the feature, so they can be switched off for testing
+    private final EnumSet<SearchFeature> searchFeatures = EnumSet.allOf(SearchFeature.class);
+
+    private Board searchingBoard;
+    // released by stop, an infinite search holds its bestmove until then
+    private CountDownLatch searchStopped;
+    private Future<?> currentSearch;
+
+    public UciEngine(PrintStream output){
+        this.output = output;
+    }
+
+    public static void main(String[] args) throws IOException {
+        new UciEngine(System.out).run(new BufferedReader(new InputStreamReader(System.in)));
+    }
+
+    public void run(BufferedReader input) throws IOException {
+        String line;
+        while ((line = input.readLine()) != null){
+            line = line.trim();
+            if (line.isEmpty()){
+                continue;
+            }
+
+            if (line.equals("quit")){
+                stopSearch();
+                break;
+            }
+
+            try {
+                handleCommand(line);
+            } catch (RuntimeException e) {
+                // a bad command shouldn't take the engine down in the middle of a game
+                output.println("info string error: " + e.getMessage());
+            }
+        }
+        searchThread.shutdownNow();
+        if (analysisCache != null){
+            analysisCache.close();
+        }
+    }
+
+    private void handleCommand(String line){
+        String[] tokens = line.split("\\s+");
+
+        switch (tokens[0]){
+            case "uci" -> {
+                output.println("id name " + ENGINE_NAME);
+                output.println("id author " + ENGINE_AUTHOR);
+                output.println("option name Hash type spin default " + Board.DEFAULT_HASH_SIZE_MB + " min 1 max " + MAX_HASH_SIZE_MB);
+                output.println("option name Threads type spin default 1 min 1 max " + MAX_THREADS);
+                output.println("option name BookFile type string default <empty>");
+                output.println("option name TablebasePath type string default <empty>");
+                output.println("option name EvalFile type string default <empty>");
+                output.println("option name AnalysisCache type string default <empty>");
+                for (SearchFeature feature : SearchFeature.values()){
+                    output.println("option name " + feature + " type check default true");
+                }
+                output.println("uciok");
+            }
+            case "isready" -> output.println("readyok");
+            case "ucinewgame" -> {
+                waitForSearch();
+                transpositionTable.clear();
+                position = new Board();
+            }
+            case "setoption" -> setOption(tokens);
+            case "position" -> {
+                waitForSearch();
+                position = parsePosition(tokens);
+            }
+            case "go" -> go(tokens);
+            case "stop" -> stopSearch();
+            default -> output.println("info string unknown command: " + tokens[0]);
+        }
+    }
+
+    // setoption name <name> value <value>
+    private void setOption(String[] tokens){
+        String name = null;
+        String value = null;
+        for (int i = 1; i < tokens.length - 1; i++){
+            if (tokens[i].equals("name")){
+                name = tokens[i + 1];
+            } else if (tokens[i].equals("value")){
+                // the rest of the line, values such as file paths can contain spaces
+                value = String.join(" ", Arrays.copyOfRange(tokens, i + 1, tokens.length));
+                break;
+            }
+        }
+        if (name == null || value == null){
+            throw new IllegalArgumentException("expected setoption name <name> value <value>");
+        }
+
+        waitForSearch();
+        switch (name.toLowerCase()){
+            case "hash" -> transpositionTable = new TranspositionTable(clamp(Integer.parseInt(value), 1, MAX_HASH_SIZE_MB));
+            case "threads" -> threadCount = clamp(Integer.parseInt(value), 1, MAX_THREADS);
+            case "bookfile" -> openingBook = value.equals("<empty>") ? null : openBook(value);
+            case "tablebasepath" -> tablebases = value.equals("<empty>") ? null : openTablebases(value);
+            case "evalfile" -> network = value.equals("<empty>") ? null : openNetwork(value);
+            case "analysiscache" -> {
+                if (analysisCache != null){
+                    analysisCache.close();
+                }
+                analysisCache = value.equals("<empty>") ? null : openAnalysisCache(value);
+            }
+            default -> setSearchFeature(name, value);
+        }
+    }
+
+    private void setSearchFeature(String name, String value){
+        for (SearchFeature feature : SearchFeature.values()){
+            if (feature.name().equalsIgnoreCase(name)){
+                if (Boolean.parseBoolean(value)){
+                    searchFeatures.add(feature);
+                } else {
+                    searchFeatures.remove(feature);
+                }
+                return;
+            }
+        }
+        output.println("info string unknown option: " + name);
+    }
+
+    private static PolyglotBook openBook(String path){
+        try {
+            return PolyglotBook.open(Path.of(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException("can't open book " + path, e);
+        }
+    }
+
+    private static Tablebases openTablebases(String path){
+        try {
+            return Tablebases.open(Path.of(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException("can't open tablebases " + path, e);
+        }
+    }
+
+    private static Nnue openNetwork(String path){
+        try {
+            return Nnue.load(Path.of(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException("can't open network " + path, e);
+        }
+    }
+
+    private static AnalysisCache openAnalysisCache(String path){
+        try {
+            return AnalysisCache.open(Path.of(path), AnalysisCache.DEFAULT_SIZE_MB);
+        } catch (IOException e) {
+            throw new UncheckedIOException("can't open analysis cache " + path, e);
+        }
+    }
+
+    // position [startpos | fen <fen>] [moves <move> ...]
+    private Board parsePosition(String[] tokens){
+        int index = 1;
+        Board board;
+
+        if (tokens.length > 1 && tokens[1].equals("startpos")){
+            board = new Board();
+            index = 2;
+        } else if (tokens.length > 1 && tokens[1].equals("fen")){
+            StringBuilder fen = new StringBuilder();
+            index = 2;
+            while (index < tokens.length && !tokens[index].equals("moves")){
+                fen.append(tokens[index++]).append(' ');
+            }
+            board = Board.fromFen(fen.toString());
+        } else {
+            throw new IllegalArgumentException("expected position startpos or position fen <fen>");
+        }
+
+        if (index < tokens.length && tokens[index].equals("moves")){
+            for (index++; index < tokens.length; index++){
+                board.playMove(findMove(board, tokens[index]));
+            }
+        }
+        return board;
+    }
+
+    private static int findMove(Board board, String uciMove){
+        int[] moves = new int[Board.MAX_MOVES];
+        int moveCount = board.generateMoves(moves);
+
+        for (int i = 0; i < moveCount; i++){
+            if (MoveUtils.toUciString(moves[i]).equals(uciMove)){
+                return moves[i];
+            }
+        }
+        throw new IllegalArgumentException("illegal move: " + uciMove);
+    }
+
+    // go [depth <n>] [movetime <ms>] [nodes <n>] [wtime <ms>] [btime <ms>] [winc <ms>] [binc <ms>] [movestogo <n>] [infinite]
+    private void go(String[] tokens){
+        int depth = Board.MAX_PLY - 1;
+        long moveTime = Board.NO_TIME_LIMIT;
+        long nodes = Board.NO_NODE_LIMIT;
+        long[] timeLeft = {-1, -1};
+        long[] increment = {0, 0};
+        int movesToGo = DEFAULT_MOVES_TO_GO;
+        boolean infinite = false;
+
+        for (int i = 1; i < tokens.length; i++){
+            String value = i + 1 < tokens.length ? tokens[i + 1] : "0";
+            switch (tokens[i]){
+                case "depth" -> depth = clamp(Integer.parseInt(value), 1, Board.MAX_PLY - 1);
+                case "movetime" -> moveTime = Long.parseLong(value);
+                case "nodes" -> nodes = Long.parseLong(value);
+                case "wtime" -> timeLeft[Colour.White.ordinal()] = Long.parseLong(value);
+                case "btime" -> timeLeft[Colour.Black.ordinal()] = Long.parseLong(value);
+                case "winc" -> increment[Colour.White.ordinal()] = Long.parseLong(value);
+                case "binc" -> increment[Colour.Black.ordinal()] = Long.parseLong(value);
+                case "movestogo" -> movesToGo = Math.max(1, Integer.parseInt(value));
+                case "infinite" -> {
+                    infinite = true;
+                    continue;
+                }
+                default -> {
+                    // ponder and unknown tokens leave the limits as they are
+                    continue;
+                }
+            }
+            i++;
+        }
+
+        // with a clock, spend an even share of the remaining time plus most of the increment
+        int colour = position.colourToPlay.ordinal();
+        if (moveTime == Board.NO_TIME_LIMIT && timeLeft[colour] >= 0){
+            long budget = timeLeft[colour] / movesToGo + increment[colour] * 3 / 4;
+            moveTime = Math.max(1, Math.min(budget, timeLeft[colour] - MOVE_OVERHEAD_MS));
+        }
+
+        waitForSearch();
+        startSearch(depth, moveTime, nodes, infinite);
+    }
+
+    private void startSearch(int depth, long moveTime, long nodes, boolean infinite){
+        Board board = new Board(position);
+        board.setTranspositionTable(transpositionTable);
+        board.setThreadCount(threadCount);
+        board.setOpeningBook(openingBook);
+        board.setTablebases(tablebases);
+        board.setNetwork(network);
+        board.setAnalysisCache(analysisCache);
+        board.setSearchFeatures(searchFeatures);
+        board.setSearchListener(this::printInfo);
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        searchingBoard = board;
+        searchStopped = stopped;
+        currentSearch = searchThread.submit(() -> {
+            Move bestMove = null;
+            try {
+                bestMove = board.search(depth, moveTime, nodes).getBestMove();
+            } catch (RuntimeException e) {
+                // the GUI waits for a bestmove whatever happens
+                output.println("info string search failed: " + e);
+            }
+            // an infinite search only answers once told to stop, even when it ends by itself (book move, full depth)
+            if (infinite){
+                try {
+                    stopped.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            // no legal move: the GUI should never ask, but it still needs an answer
+            output.println("bestmove " + (bestMove == null ? "0000" : bestMove.toUciString()));
+        });
+    }
+
+    private void printInfo(SearchProgress progress){
+        // UCI scores are from the point of view of the engine's side
+        int score = searchingBoard.colourToPlay == Colour.White ? progress.getEvaluation() : -progress.getEvaluation();
+
+        StringBuilder pv = new StringBuilder();
+        List<Move> principalVariation = progress.getPrincipalVariation();
+        for (Move move : principalVariation){
+            pv.append(' ').append(move.toUciString());
+        }
+
+        output.println("info depth " + progress.getDepth() + " score " + formatScore(score) + " nodes " + progress.getNodes()
+                + " nps " + progress.getNodesPerSecond() + " time " + progress.getElapsedMillis() + " pv" + pv);
+    }
+
+    // mates are given in moves, negative when the engine is the one getting mated
+    private static String formatScore(int score){
+        int pliesToMate = Board.MATE_SCORE - Math.abs(score);
+        if (pliesToMate <= Tablebase.MAX_PLIES_TO_MATE + Board.MAX_PLY){
+            int movesToMate = (pliesToMate + 1) / 2;
+            return "mate " + (score > 0 ? movesToMate : -movesToMate);
+        }
+        return "cp " + score;
+    }
+
+    private void stopSearch(){
+        if (searchingBoard != null){
+            searchingBoard.stopSearch();
+            searchStopped.countDown();
+        }
+        waitForSearch();
+    }
+
+    // commands that change the engine's state wait for the search in progress, as the protocol expects
+    private void waitForSearch(){
+        if (currentSearch == null){
+            return;
+        }
+        try {
+            currentSearch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            output.println("info string search failed: " + e.getCause());
+        }
+        currentSearch = null;
+        searchingBoard = null;
+        searchStopped = null;
+    }
+
+    private static int clamp(int value, int min, int max){
+        return Math.max(min, Math.min(max, value));
+    }
+}
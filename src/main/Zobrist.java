@@ -0,0 +1,38 @@
+package main;
+
+public class Zobrist {
+    // random keys xor-ed together to give a 64-bit hash of a position that can be updated
+    // incrementally: moving a piece just xors out its old square and xors in the new one
+    public static final long[][] PIECE_KEYS = new long[12][64];
+    public static final long BLACK_TO_PLAY_KEY;
+    // one key per combination of the 4 castling rights, and one per file of the en passant square
+    public static final long[] CASTLING_KEYS = new long[16];
+    public static final long[] EN_PASSANT_KEYS = new long[8];
+
+    // fixed seed so hashes are the same between runs
+    private static long randomState = 0x2d358dccaa6c78a5L;
+
+    static {
+        for (int bitboardIndex = 0; bitboardIndex < 12; bitboardIndex++){
+            for (int square = 0; square < 64; square++){
+                PIECE_KEYS[bitboardIndex][square] = nextRandom();
+            }
+        }
+        BLACK_TO_PLAY_KEY = nextRandom();
+        // no rights is the common case late in the game and leaves the key unchanged
+        for (int castlingRights = 1; castlingRights < 16; castlingRights++){
+            CASTLING_KEYS[castlingRights] = nextRandom();
+        }
+        for (int file = 0; file < 8; file++){
+            EN_PASSANT_KEYS[file] = nextRandom();
+        }
+    }
+
+    private static long nextRandom(){
+        // splitmix64
+        long z = (randomState += 0x9e3779b97f4a7c15L);
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}